@@ -0,0 +1,178 @@
+package com.ingestionsystem.searchupdater.benchmark;
+
+import com.ingestionsystem.searchupdater.SearchUpdaterApplication;
+import com.ingestionsystem.searchupdater.index.ProductOfferIndex;
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+import com.ingestionsystem.searchupdater.operation.RequestOperationType;
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import com.ingestionsystem.searchupdater.service.UpdaterService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and allocations of the four provider paths, each request going through UpdaterServiceImpl
+ * in its own transaction against a pre-seeded H2 catalog of about 100k offers.
+ * Hot keys hit the same product every time, cold keys go round the whole catalog.
+ * Deleted offers and products are restored before every invocation, outside the measured time.
+ * Run with: gradle jmh, or gradle jmh -Pjmh.includes=deleteOffer for a single path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProviderBenchmark {
+
+    private static final int CATALOG_OFFERS = 100_000;
+
+    @Param({"1", "100", "10000"})
+    private int offersPerProduct;
+
+    @Param({"hot", "cold"})
+    private String keys;
+
+    private ConfigurableApplicationContext context;
+    private UpdaterService service;
+    private int products;
+    private long invocation;
+    // product and offer the next invocation works on
+    private int product;
+    private int offer;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = new SpringApplicationBuilder(SearchUpdaterApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.main.banner-mode=off", "logging.level.root=WARN")
+                .run();
+        service = context.getBean(UpdaterService.class);
+        products = Math.max(10, CATALOG_OFFERS / offersPerProduct);
+        seed(context.getBean(JdbcTemplate.class));
+        context.getBean(ProductOfferIndex.class).rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void nextKey() {
+        invocation++;
+        product = keys.equals("hot") ? 0 : (int) (invocation % products);
+        offer = (int) ((invocation / products) % offersPerProduct);
+    }
+
+    @Benchmark
+    public List<BaseSearchEngineOperation> upsertOffer() {
+        // alternating names, so every invocation changes the offer
+        return service.getBaseSearchEngineOperations(new IngestionRequest(RequestOperationType.UPSERT_OFFER,
+                offerId(product, offer), offerName(offer) + (invocation % 2), null, productId(product), null));
+    }
+
+    @Benchmark
+    public List<BaseSearchEngineOperation> upsertProduct() {
+        return service.getBaseSearchEngineOperations(new IngestionRequest(RequestOperationType.UPSERT_PRODUCT,
+                null, null, productId(product), null, productName(product) + (invocation % 2)));
+    }
+
+    @Benchmark
+    public List<BaseSearchEngineOperation> deleteOffer(DeletedOffer deleted) {
+        return service.getBaseSearchEngineOperations(new IngestionRequest(RequestOperationType.DELETE_OFFER,
+                offerId(product, offer), null, null, null, null));
+    }
+
+    @Benchmark
+    public List<BaseSearchEngineOperation> deleteProduct(DeletedProduct deleted) {
+        return service.getBaseSearchEngineOperations(new IngestionRequest(RequestOperationType.DELETE_PRODUCT,
+                null, null, productId(product), null, null));
+    }
+
+    /**
+     * Puts back the offer deleted by the previous invocation of deleteOffer.
+     */
+    @State(Scope.Benchmark)
+    public static class DeletedOffer {
+        private IngestionRequest restore;
+
+        @Setup(Level.Invocation)
+        public void restore(ProviderBenchmark benchmark) {
+            if (restore != null) {
+                benchmark.service.getBaseSearchEngineOperations(restore);
+            }
+            restore = new IngestionRequest(RequestOperationType.UPSERT_OFFER, offerId(benchmark.product, benchmark.offer),
+                    offerName(benchmark.offer), null, productId(benchmark.product), null);
+        }
+    }
+
+    /**
+     * Puts back the product deleted by the previous invocation of deleteProduct, with its offers.
+     */
+    @State(Scope.Benchmark)
+    public static class DeletedProduct {
+        private List<IngestionRequest> restore;
+
+        @Setup(Level.Invocation)
+        public void restore(ProviderBenchmark benchmark) {
+            if (restore != null) {
+                benchmark.service.getBatchSearchEngineOperations(restore);
+            }
+            restore = benchmark.productRequests(benchmark.product);
+        }
+    }
+
+    private List<IngestionRequest> productRequests(int product) {
+        var requests = new ArrayList<IngestionRequest>(offersPerProduct + 1);
+        requests.add(new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, productId(product), null,
+                productName(product)));
+        for (int offer = 0; offer < offersPerProduct; offer++) {
+            requests.add(new IngestionRequest(RequestOperationType.UPSERT_OFFER, offerId(product, offer),
+                    offerName(offer), null, productId(product), null));
+        }
+        return requests;
+    }
+
+    // inserted directly, seeding through the service would take longer than the benchmark
+    private void seed(JdbcTemplate jdbcTemplate) {
+        var productRows = new ArrayList<Object[]>(products);
+        for (int product = 0; product < products; product++) {
+            productRows.add(new Object[] {productId(product), productName(product)});
+        }
+        jdbcTemplate.batchUpdate("insert into product (id, name) values (?, ?)", productRows);
+        var offerRows = new ArrayList<Object[]>(10_000);
+        for (int product = 0; product < products; product++) {
+            for (int offer = 0; offer < offersPerProduct; offer++) {
+                offerRows.add(new Object[] {offerId(product, offer), offerName(offer), productId(product)});
+                if (offerRows.size() == 10_000) {
+                    jdbcTemplate.batchUpdate("insert into offer (id, name, offer_id) values (?, ?, ?)", offerRows);
+                    offerRows.clear();
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into offer (id, name, offer_id) values (?, ?, ?)", offerRows);
+    }
+
+    private static String productId(int product) {
+        return "product" + product;
+    }
+
+    private static String productName(int product) {
+        return "product name " + product;
+    }
+
+    private static String offerId(int product, int offer) {
+        return "offer" + product + "-" + offer;
+    }
+
+    private static String offerName(int offer) {
+        return "offer name " + offer;
+    }
+}
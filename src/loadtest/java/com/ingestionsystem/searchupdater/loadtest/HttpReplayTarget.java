@@ -0,0 +1,38 @@
+package com.ingestionsystem.searchupdater.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Posts every request to /api/ingest of a running application.
+ */
+public class HttpReplayTarget implements ReplayTarget {
+    private final HttpClient client;
+    private final URI ingestUri;
+
+    public HttpReplayTarget(String baseUri) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.ingestUri = URI.create(baseUri.replaceAll("/+$", "") + "/api/ingest");
+    }
+
+    @Override
+    public boolean send(ReplayedRequest request) throws Exception {
+        var httpRequest = HttpRequest.newBuilder(ingestUri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(request.json()))
+                .build();
+        var response = client.send(httpRequest, HttpResponse.BodyHandlers.discarding());
+        return response.statusCode() / 100 == 2;
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+}
@@ -0,0 +1,39 @@
+package com.ingestionsystem.searchupdater.loadtest;
+
+import com.ingestionsystem.searchupdater.SearchUpdaterApplication;
+import com.ingestionsystem.searchupdater.service.UpdaterService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the application without its web server in this JVM and calls UpdaterService directly,
+ * so latencies don't include HTTP and JSON. The application is configured as usual, e.g. by SEARCHUPDATER_* variables.
+ */
+public class InProcessReplayTarget implements ReplayTarget {
+    private final ConfigurableApplicationContext context;
+    private final UpdaterService service;
+
+    public InProcessReplayTarget() {
+        this.context = new SpringApplicationBuilder(SearchUpdaterApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.main.banner-mode=off", "logging.level.root=WARN")
+                .run();
+        this.service = context.getBean(UpdaterService.class);
+    }
+
+    @Override
+    public boolean send(ReplayedRequest request) {
+        try {
+            service.getBaseSearchEngineOperations(request.request());
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
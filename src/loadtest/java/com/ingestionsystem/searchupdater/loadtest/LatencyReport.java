@@ -0,0 +1,68 @@
+package com.ingestionsystem.searchupdater.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms and error counts per operation type, recorded in microseconds up to an hour
+ * with 3 significant digits.
+ */
+public class LatencyReport {
+    private static final String ALL = "ALL";
+    private static final long HIGHEST_MICROS = TimeUnit.HOURS.toMicros(1);
+    // operation -> latencies, guarded by this
+    private final Map<String, Histogram> histograms = new TreeMap<>();
+    // operation -> requests sent, the histograms also count corrected values
+    private final Map<String, Long> requests = new TreeMap<>();
+    private final Map<String, Long> errors = new TreeMap<>();
+
+    /**
+     * Records a latency. With an expected interval, requests which would have been sent while this one was
+     * waiting are recorded too, with latencies they would have seen (coordinated omission correction).
+     */
+    public synchronized void record(String operation, long latencyNanos, long expectedIntervalNanos, boolean success) {
+        var latencyMicros = Math.min(HIGHEST_MICROS, Math.max(1, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        var expectedIntervalMicros = TimeUnit.NANOSECONDS.toMicros(expectedIntervalNanos);
+        for (var key : new String[] {operation, ALL}) {
+            var histogram = histograms.computeIfAbsent(key, k -> new Histogram(HIGHEST_MICROS, 3));
+            if (expectedIntervalMicros > 0) {
+                histogram.recordValueWithExpectedInterval(latencyMicros, expectedIntervalMicros);
+            } else {
+                histogram.recordValue(latencyMicros);
+            }
+            requests.merge(key, 1L, Long::sum);
+            if (!success) {
+                errors.merge(key, 1L, Long::sum);
+            }
+        }
+    }
+
+    public synchronized void print(PrintStream out, long elapsedNanos) {
+        var seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        out.printf("%-16s %10s %10s %8s %10s %10s %10s %10s%n",
+                "operation", "requests", "req/s", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        histograms.forEach((operation, histogram) -> {
+            if (!operation.equals(ALL)) {
+                print(out, operation, histogram, seconds);
+            }
+        });
+        if (histograms.containsKey(ALL)) {
+            print(out, ALL, histograms.get(ALL), seconds);
+        }
+    }
+
+    private void print(PrintStream out, String operation, Histogram histogram, double seconds) {
+        out.printf("%-16s %10d %10.1f %8d %10.3f %10.3f %10.3f %10.3f%n", operation,
+                requests.get(operation), requests.get(operation) / seconds, errors.getOrDefault(operation, 0L),
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
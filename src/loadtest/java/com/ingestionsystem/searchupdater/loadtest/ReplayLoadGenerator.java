@@ -0,0 +1,133 @@
+package com.ingestionsystem.searchupdater.loadtest;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays an NDJSON file of ingestion requests and prints latency percentiles and throughput per operation.
+ * In the open loop requests start at a constant rate whatever the latency, and latency is measured from the time
+ * a request was due to start, so a stall delays and slows every request behind it rather than hiding them.
+ * In the closed loop a fixed number of workers send requests back to back, as clients waiting for responses do.
+ * Run with: gradle replay --args="--file=requests.ndjson --mode=open --rate=500 --duration=PT1M"
+ */
+public class ReplayLoadGenerator {
+
+    private final ReplayOptions options;
+    private final List<ReplayedRequest> requests;
+    private final ReplayTarget target;
+    private final LatencyReport report = new LatencyReport();
+    // requests started so far, the first warmupRequests aren't recorded
+    private final AtomicLong started = new AtomicLong();
+
+    public ReplayLoadGenerator(ReplayOptions options, List<ReplayedRequest> requests, ReplayTarget target) {
+        this.options = options;
+        this.requests = requests;
+        this.target = target;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = ReplayOptions.parse(args);
+        var requests = read(options);
+        try (var target = options.target().equals(ReplayOptions.IN_PROCESS)
+                ? new InProcessReplayTarget()
+                : new HttpReplayTarget(options.target())) {
+            new ReplayLoadGenerator(options, requests, target).run();
+        }
+    }
+
+    public void run() throws InterruptedException {
+        System.out.printf("Replaying %d requests from %s to %s, %s%n", requests.size(), options.file(), options.target(),
+                options.mode().equals("open") ? "open loop at " + options.rate() + " requests/s"
+                        : "closed loop with " + options.concurrency() + " workers");
+        var start = System.nanoTime();
+        if (options.mode().equals("open")) {
+            runOpenLoop(start);
+        } else {
+            runClosedLoop(start);
+        }
+        report.print(System.out, System.nanoTime() - start);
+    }
+
+    private void runOpenLoop(long start) throws InterruptedException {
+        var intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.rate());
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                var due = start + i * intervalNanos;
+                var request = next(i, due - start);
+                if (request == null) {
+                    break;
+                }
+                for (var wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                }
+                executor.execute(() -> send(request, due, 0));
+            }
+        }
+    }
+
+    private void runClosedLoop(long start) throws InterruptedException {
+        var expectedIntervalNanos = options.expectedInterval().toNanos();
+        var sequence = new AtomicLong();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int worker = 0; worker < options.concurrency(); worker++) {
+                executor.execute(() -> {
+                    while (true) {
+                        var sendStart = System.nanoTime();
+                        var request = next(sequence.getAndIncrement(), sendStart - start);
+                        if (request == null) {
+                            return;
+                        }
+                        send(request, sendStart, expectedIntervalNanos);
+                    }
+                });
+            }
+        }
+    }
+
+    // the request to send as the i-th, or null when the replay is over
+    private ReplayedRequest next(long i, long elapsedNanos) {
+        if (options.duration().isZero()) {
+            return i < requests.size() ? requests.get((int) i) : null;
+        }
+        return elapsedNanos < options.duration().toNanos() ? requests.get((int) (i % requests.size())) : null;
+    }
+
+    private void send(ReplayedRequest request, long due, long expectedIntervalNanos) {
+        boolean success;
+        try {
+            success = target.send(request);
+        } catch (Exception e) {
+            success = false;
+        }
+        var latency = System.nanoTime() - due;
+        if (started.incrementAndGet() > options.warmupRequests()) {
+            report.record(request.operation(), latency, expectedIntervalNanos, success);
+        }
+    }
+
+    private static List<ReplayedRequest> read(ReplayOptions options) throws IOException {
+        var objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        var requests = new ArrayList<ReplayedRequest>();
+        try (var lines = Files.lines(options.file())) {
+            for (var line : (Iterable<String>) lines::iterator) {
+                if (!line.isBlank()) {
+                    requests.add(new ReplayedRequest(line, objectMapper.readValue(line, IngestionRequest.class)));
+                }
+            }
+        }
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("No requests in " + options.file());
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,59 @@
+package com.ingestionsystem.searchupdater.loadtest;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+
+/**
+ * Options of a replay, given as --name=value arguments.
+ */
+public record ReplayOptions(
+    // NDJSON file with one IngestionRequest per line
+    Path file,
+    // http://host:port of a running application, or in-process to start one in this JVM
+    String target,
+    // open: requests start at a constant rate whatever the latency, closed: concurrency workers send back to back
+    String mode,
+    // requests per second of the open loop
+    double rate,
+    // workers of the closed loop
+    int concurrency,
+    // stop after this long, replaying the file again from the start if it ends earlier; zero replays the file once
+    Duration duration,
+    // requests not recorded at the start, so the JIT and caches warm up first
+    int warmupRequests,
+    // expected interval between requests of a closed-loop worker, used to correct coordinated omission; zero disables it
+    Duration expectedInterval)
+{
+    public static final String IN_PROCESS = "in-process";
+
+    public static ReplayOptions parse(String[] args) {
+        var values = new HashMap<String, String>();
+        for (var arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        if (!values.containsKey("file")) {
+            throw new IllegalArgumentException("Missing --file=<requests.ndjson>");
+        }
+        var options = new ReplayOptions(
+                Path.of(values.get("file")),
+                values.getOrDefault("target", "http://localhost:8090"),
+                values.getOrDefault("mode", "open"),
+                Double.parseDouble(values.getOrDefault("rate", "100")),
+                Integer.parseInt(values.getOrDefault("concurrency", "8")),
+                Duration.parse(values.getOrDefault("duration", "PT0S")),
+                Integer.parseInt(values.getOrDefault("warmup", "0")),
+                Duration.parse(values.getOrDefault("expected-interval", "PT0S")));
+        if (!options.mode().equals("open") && !options.mode().equals("closed")) {
+            throw new IllegalArgumentException("Mode must be open or closed: " + options.mode());
+        }
+        if (!options.target().equals(IN_PROCESS)) {
+            URI.create(options.target());
+        }
+        return options;
+    }
+}
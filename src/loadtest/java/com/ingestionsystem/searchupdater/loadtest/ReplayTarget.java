@@ -0,0 +1,15 @@
+package com.ingestionsystem.searchupdater.loadtest;
+
+/**
+ * Where replayed requests are sent. Implementations are called from many threads at once.
+ */
+public interface ReplayTarget extends AutoCloseable {
+
+    /**
+     * Sends the request and waits for its response, returning false when the request was rejected or failed.
+     */
+    boolean send(ReplayedRequest request) throws Exception;
+
+    @Override
+    default void close() {}
+}
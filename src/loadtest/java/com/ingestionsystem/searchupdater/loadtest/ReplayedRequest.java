@@ -0,0 +1,15 @@
+package com.ingestionsystem.searchupdater.loadtest;
+
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+
+/**
+ * A request of the replayed file, with its line as it's sent over HTTP.
+ */
+public record ReplayedRequest(
+    String json,
+    IngestionRequest request)
+{
+    public String operation() {
+        return request.operation() != null ? request.operation().name() : "NONE";
+    }
+}
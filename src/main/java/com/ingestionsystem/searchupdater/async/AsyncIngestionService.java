@@ -0,0 +1,297 @@
+package com.ingestionsystem.searchupdater.async;
+
+import com.ingestionsystem.searchupdater.config.AsyncProperties;
+import com.ingestionsystem.searchupdater.config.BatchProperties;
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import com.ingestionsystem.searchupdater.service.UpdaterService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accepts requests without waiting for their processing.
+ * Accepted requests are queued and processed in batches by a single worker, their results are published
+ * to subscribers of the operation stream in ticket order. The latest results are kept in memory,
+ * so a subscriber reconnecting with the last ticket it received gets the results it missed.
+ * <p>
+ * Tickets start from the start time in milliseconds shifted left by 20 bits, so tickets of a restarted service
+ * are greater than any handed out before it and a subscriber reconnecting with one of those gets every result kept.
+ * Results are sent to each subscriber from its own bounded buffer by sender threads, never by the worker,
+ * a subscriber whose buffer is full is disconnected and can reconnect with the last ticket it received.
+ * On shutdown queued requests are still processed for up to searchupdater.async.shutdown-timeout,
+ * the queue is in memory only, so accepting a request doesn't guarantee its processing beyond that.
+ */
+@Service
+@ConditionalOnProperty(prefix = "searchupdater.async", name = "enabled", havingValue = "true")
+public class AsyncIngestionService {
+
+    private final static Logger logger = LoggerFactory.getLogger(AsyncIngestionService.class);
+    private static final int TICKET_SEED_SHIFT = 20;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private final UpdaterService updaterService;
+    private final AsyncProperties asyncProperties;
+    private final BatchProperties batchProperties;
+    private final BlockingQueue<AcceptedRequest> queue;
+    private long lastTicket;
+    private volatile boolean stopping;
+    // guards replay and subscribers, so a new subscriber gets every result exactly once
+    private final Object publishLock = new Object();
+    private final Deque<TicketResult> replay = new ArrayDeque<>();
+    private final List<Subscription> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService senders;
+    private Thread worker;
+
+    private record AcceptedRequest(long ticket, IngestionRequest request) {}
+
+    @Autowired
+    public AsyncIngestionService(UpdaterService updaterService, AsyncProperties asyncProperties,
+                                 BatchProperties batchProperties, MeterRegistry meterRegistry) {
+        this.updaterService = updaterService;
+        this.asyncProperties = asyncProperties;
+        this.batchProperties = batchProperties;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, asyncProperties.queueCapacity()));
+        this.lastTicket = System.currentTimeMillis() << TICKET_SEED_SHIFT;
+        this.senders = Executors.newCachedThreadPool(task -> {
+            var thread = new Thread(task, "async-stream-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("searchupdater.async.queue.depth", queue, Collection::size).register(meterRegistry);
+        Gauge.builder("searchupdater.async.subscribers", subscribers, List::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        worker = new Thread(this::processQueue, "async-ingestion");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        stopping = true;
+        if (worker != null) {
+            // requests answered with 202 are processed before stopping, as long as it takes less than the timeout
+            worker.join(asyncProperties.shutdownTimeout().toMillis());
+            if (worker.isAlive()) {
+                worker.interrupt();
+                worker.join(10_000);
+            }
+        }
+        senders.shutdown();
+        senders.awaitTermination(5, TimeUnit.SECONDS);
+        subscribers.forEach(subscription -> subscription.emitter.complete());
+    }
+
+    /**
+     * Validates and queues the request. Throws IllegalArgumentException for an invalid request
+     * and RejectedExecutionException when the queue is full or the service is stopping.
+     */
+    public Ticket submit(IngestionRequest request) {
+        updaterService.validateRequest(request);
+        // tickets are queued in increasing order, which is the order their results are published in
+        synchronized (queue) {
+            if (stopping) {
+                throw new RejectedExecutionException("Shutting down, no more requests are accepted");
+            }
+            if (queue.remainingCapacity() == 0) {
+                throw new RejectedExecutionException("Too many requests waiting to be processed");
+            }
+            var ticket = ++lastTicket;
+            queue.add(new AcceptedRequest(ticket, request));
+            return new Ticket(ticket);
+        }
+    }
+
+    /**
+     * Subscribes to results of requests, starting after the given ticket if it's still kept for replay.
+     */
+    public SseEmitter subscribe(Long lastEventId) {
+        return subscribe(new SseEmitter(asyncProperties.streamTimeout().toMillis()), lastEventId);
+    }
+
+    SseEmitter subscribe(SseEmitter emitter, Long lastEventId) {
+        var subscription = new Subscription(emitter);
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(e -> subscription.close());
+        synchronized (publishLock) {
+            if (lastEventId != null) {
+                // missed results are bounded by the replay size, they are buffered whatever the buffer size
+                replay.stream().filter(result -> result.ticket() > lastEventId).forEach(subscription::replay);
+            }
+            subscribers.add(subscription);
+        }
+        return emitter;
+    }
+
+    private void processQueue() {
+        var chunkSize = Math.max(1, batchProperties.chunkSize());
+        var accepted = new ArrayList<AcceptedRequest>(chunkSize);
+        while (true) {
+            AcceptedRequest first;
+            try {
+                first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (first == null) {
+                if (stopping) {
+                    break;
+                }
+                continue;
+            }
+            accepted.add(first);
+            queue.drainTo(accepted, chunkSize - 1);
+            process(accepted);
+            accepted.clear();
+        }
+        // requests left in the queue after the shutdown timeout are dropped, their producers only got a ticket
+        if (!queue.isEmpty()) {
+            logger.warn("Dropped " + queue.size() + " accepted requests on shutdown");
+        }
+    }
+
+    private void process(List<AcceptedRequest> accepted) {
+        var published = new boolean[accepted.size()];
+        try {
+            updaterService.processRequests(accepted.stream().map(AcceptedRequest::request).iterator(), result -> {
+                var ticket = accepted.get(result.index()).ticket();
+                published[result.index()] = true;
+                publish(result.error() == null
+                        ? TicketResult.success(ticket, result.operations())
+                        : TicketResult.failure(ticket, result.error()));
+            });
+        } catch (RuntimeException e) {
+            logger.error("Processing of accepted requests failed", e);
+            for (int i = 0; i < accepted.size(); i++) {
+                if (!published[i]) {
+                    publish(TicketResult.failure(accepted.get(i).ticket(), "Processing failed: " + e.getMessage()));
+                }
+            }
+        }
+    }
+
+    // only buffers the result, so the worker never waits for a subscriber
+    private void publish(TicketResult result) {
+        synchronized (publishLock) {
+            replay.addLast(result);
+            while (replay.size() > asyncProperties.replaySize()) {
+                replay.removeFirst();
+            }
+            for (var subscriber : subscribers) {
+                subscriber.offer(result);
+            }
+        }
+    }
+
+    private static boolean send(SseEmitter emitter, TicketResult result) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(result.ticket()))
+                    .name(result.error() == null ? "operations" : "rejected")
+                    .data(result));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // the subscriber went away, it can reconnect with the last ticket it received
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    /**
+     * Results waiting to be sent to one subscriber, in ticket order. At most one sender drains it at a time.
+     */
+    private final class Subscription {
+        private final SseEmitter emitter;
+        private final Deque<TicketResult> pending = new ArrayDeque<>();
+        private boolean sending;
+        private boolean closed;
+
+        private Subscription(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        synchronized void replay(TicketResult result) {
+            pending.addLast(result);
+            startSending();
+        }
+
+        void offer(TicketResult result) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (pending.size() < Math.max(1, asyncProperties.subscriberBuffer())) {
+                    pending.addLast(result);
+                    startSending();
+                    return;
+                }
+            }
+            logger.warn("Disconnecting subscriber more than " + asyncProperties.subscriberBuffer()
+                    + " results behind, it can reconnect with the last ticket it received");
+            close();
+            // completing waits for a send in progress, which is left to a sender
+            try {
+                senders.execute(emitter::complete);
+            } catch (RejectedExecutionException e) {
+                // stopping, the subscription is completed
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+                pending.clear();
+            }
+            subscribers.remove(this);
+        }
+
+        private void startSending() {
+            if (!sending && !closed) {
+                sending = true;
+                try {
+                    senders.execute(this::sendPending);
+                } catch (RejectedExecutionException e) {
+                    // stopping, the subscription is completed
+                    sending = false;
+                }
+            }
+        }
+
+        private void sendPending() {
+            while (true) {
+                TicketResult result;
+                synchronized (this) {
+                    result = closed ? null : pending.pollFirst();
+                    if (result == null) {
+                        sending = false;
+                        return;
+                    }
+                }
+                if (!send(emitter, result)) {
+                    close();
+                    return;
+                }
+            }
+        }
+    }
+}
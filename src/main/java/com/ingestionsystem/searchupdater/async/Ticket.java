@@ -0,0 +1,3 @@
+package com.ingestionsystem.searchupdater.async;
+
+public record Ticket(long id) {}
@@ -0,0 +1,20 @@
+package com.ingestionsystem.searchupdater.async;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+
+import java.util.List;
+
+/**
+ * Outcome of an accepted request: its operations, or the error it was rejected with while processing.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TicketResult(long ticket, List<BaseSearchEngineOperation> operations, String error) {
+    public static TicketResult success(long ticket, List<BaseSearchEngineOperation> operations) {
+        return new TicketResult(ticket, operations, null);
+    }
+
+    public static TicketResult failure(long ticket, String error) {
+        return new TicketResult(ticket, null, error);
+    }
+}
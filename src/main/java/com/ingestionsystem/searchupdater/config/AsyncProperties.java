@@ -0,0 +1,22 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "searchupdater.async")
+public record AsyncProperties(
+    // whether requests are accepted at /api/ingest/async and results streamed at /api/operations/stream
+    @DefaultValue("false") boolean enabled,
+    // accepted requests waiting to be processed, further requests are refused with 503 until there's room
+    @DefaultValue("10000") int queueCapacity,
+    // latest results kept to be sent again to a subscriber reconnecting with Last-Event-ID
+    @DefaultValue("10000") int replaySize,
+    // after this time a subscription is completed and the subscriber is expected to reconnect
+    @DefaultValue("PT30M") Duration streamTimeout,
+    // results waiting to be sent to one subscriber, a subscriber falling further behind is disconnected
+    @DefaultValue("1000") int subscriberBuffer,
+    // on shutdown, time given to process requests still queued, what's left after it is dropped
+    @DefaultValue("PT30S") Duration shutdownTimeout)
+{}
@@ -0,0 +1,12 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "searchupdater.batch")
+public record BatchProperties(
+    // number of requests processed in one transaction before the persistence context is flushed and cleared
+    @DefaultValue("500") int chunkSize,
+    // whether operations of a batch (or of a chunk of a stream) are collapsed to the final state per product
+    @DefaultValue("true") boolean coalesce)
+{}
@@ -0,0 +1,18 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "searchupdater.debounce")
+public record DebounceProperties(
+    // whether operations delivered to the search engine sink are held per product until its changes settle
+    @DefaultValue("false") boolean enabled,
+    // a product is delivered once it hasn't changed for this long
+    @DefaultValue("200ms") Duration window,
+    // or at the latest this long after its first held change
+    @DefaultValue("2s") Duration maxDelay,
+    // settled products are locked, read and delivered in groups of at most this many
+    @DefaultValue("100") int deliveryBatchSize)
+{}
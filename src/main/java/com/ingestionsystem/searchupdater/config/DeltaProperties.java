@@ -0,0 +1,14 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "searchupdater.delta")
+public record DeltaProperties(
+    // whether changes of existing searchable products are emitted as partial updates instead of full documents
+    @DefaultValue("false") boolean enabled,
+    // smaller products always get the full document, it's about as small as the change
+    @DefaultValue("100") int minOffers,
+    // a partial update is emitted only when it changes at most this fraction of the product's offers
+    @DefaultValue("0.1") double maxRatio)
+{}
@@ -0,0 +1,73 @@
+package com.ingestionsystem.searchupdater.config;
+
+import com.ingestionsystem.searchupdater.model.Offer;
+import com.ingestionsystem.searchupdater.model.Product;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ConfigurationBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Second-level cache of Product and Offer entities, so lookups by id of hot entities don't go to the database.
+ * Each entity has its own region bounded by entry count. Regions are read-write: Hibernate updates or invalidates
+ * entries when entities are saved or deleted, and invalidates the whole offer region on bulk updates of offers.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "searchupdater.entity-cache", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(EntityCacheProperties.class)
+public class EntityCacheConfiguration {
+
+    private static final List<String> REGIONS = List.of(Product.class.getName(), Offer.class.getName());
+
+    @Bean(destroyMethod = "close")
+    public CacheManager entityCacheManager(EntityCacheProperties properties) {
+        var configuration = ConfigurationBuilder.newConfigurationBuilder()
+                .withCache(Product.class.getName(), regionConfiguration(properties.productEntries()))
+                .withCache(Offer.class.getName(), regionConfiguration(properties.offerEntries()))
+                .build();
+        var cachingProvider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        // a unique URI, managers are shared by URI and every application context needs its own
+        var cacheManager = cachingProvider.getCacheManager(
+                URI.create("urn:searchupdater:entity-cache:" + UUID.randomUUID()), configuration);
+        REGIONS.forEach(region -> cacheManager.enableStatistics(region, true));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheHibernateProperties(CacheManager entityCacheManager) {
+        return hibernateProperties -> {
+            hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            hibernateProperties.put(ConfigSettings.CACHE_MANAGER, entityCacheManager);
+            // regions are created above with their bounds, never unbounded on demand
+            hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    // cache.gets (hit and miss), cache.puts, cache.evictions and cache.removals per region
+    @Bean
+    public MeterBinder entityCacheMetrics(CacheManager entityCacheManager) {
+        return registry -> REGIONS.forEach(region -> JCacheMetrics.monitor(registry, entityCacheManager.getCache(region)));
+    }
+
+    private static CacheConfiguration<Object, Object> regionConfiguration(int entries) {
+        return CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                Object.class, Object.class, ResourcePoolsBuilder.heap(Math.max(1, entries))).build();
+    }
+}
@@ -0,0 +1,13 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "searchupdater.entity-cache")
+public record EntityCacheProperties(
+    // whether products and offers are kept in the second-level cache between transactions
+    @DefaultValue("false") boolean enabled,
+    // cached entities, the least recently used are evicted beyond it
+    @DefaultValue("100000") int productEntries,
+    @DefaultValue("1000000") int offerEntries)
+{}
@@ -0,0 +1,12 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "searchupdater.fingerprints")
+public record FingerprintProperties(
+    // whether upserts of a document equal to the last one emitted for the product are suppressed
+    @DefaultValue("false") boolean enabled,
+    // products with a remembered fingerprint, the least recently used are evicted beyond it
+    @DefaultValue("1000000") int maxSize)
+{}
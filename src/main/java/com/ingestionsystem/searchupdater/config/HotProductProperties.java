@@ -0,0 +1,15 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "searchupdater.hot-products")
+public record HotProductProperties(
+    // whether the busiest and the largest products are tracked
+    @DefaultValue("false") boolean enabled,
+    // products counted by every sketch, its memory is fixed by it; a product seen more than total / capacity times
+    // is always kept, but its count may be overestimated by up to the count of the product it replaced
+    @DefaultValue("1000") int capacity,
+    // products reported by the endpoint unless asked for another number
+    @DefaultValue("20") int top)
+{}
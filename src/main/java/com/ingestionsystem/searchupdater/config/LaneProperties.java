@@ -0,0 +1,14 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "searchupdater.lanes")
+public record LaneProperties(
+    // whether requests are processed by single-threaded lanes chosen by the product they belong to
+    @DefaultValue("false") boolean enabled,
+    // number of lanes, 0 for one per available processor
+    @DefaultValue("0") int count,
+    // tasks waiting in a lane before submitting more blocks the caller
+    @DefaultValue("1000") int queueCapacity)
+{}
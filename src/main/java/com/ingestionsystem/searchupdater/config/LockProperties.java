@@ -0,0 +1,14 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "searchupdater.locks")
+public record LockProperties(
+    // number of locks product ids are spread over, unrelated products share a lock only on hash collisions
+    @DefaultValue("1024") int stripes,
+    // how long a transaction already holding product locks waits for more of them before it's rolled back
+    @DefaultValue("10s") Duration timeout)
+{}
@@ -0,0 +1,16 @@
+package com.ingestionsystem.searchupdater.config;
+
+import com.ingestionsystem.searchupdater.metrics.SqlStatementCounter;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfiguration {
+
+    @Bean
+    public HibernatePropertiesCustomizer sqlStatementCounterHibernateProperties(SqlStatementCounter sqlStatementCounter) {
+        return hibernateProperties -> hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, sqlStatementCounter);
+    }
+}
@@ -0,0 +1,17 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "searchupdater.operation-log")
+public record OperationLogProperties(
+    // whether emitted operations are appended to the operation log in the transaction which computed them
+    @DefaultValue("false") boolean enabled,
+    // entries older than this are deleted, checked every truncate interval
+    @DefaultValue("P1D") Duration retention,
+    @DefaultValue("PT1M") Duration truncateInterval,
+    // upper bound of the limit of a page read from the log
+    @DefaultValue("10000") int maxPageSize)
+{}
@@ -0,0 +1,33 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "searchupdater.sink")
+public record SinkProperties(
+    // where emitted operations are delivered in bulk: none, file or in-memory
+    @DefaultValue("none") String type,
+    // index name written in bulk action lines
+    @DefaultValue("products") String index,
+    // a bulk request is sent when it has this many operations or bytes, or when the flush interval passes
+    @DefaultValue("1000") int batchSize,
+    @DefaultValue("5MB") DataSize batchBytes,
+    @DefaultValue("1s") Duration flushInterval,
+    // operations waiting for delivery, emitting more blocks request processing until there's room
+    @DefaultValue("10000") int maxPending,
+    // attempts to send a bulk request before it's written to the dead letter file, 0 retries until it's delivered
+    @DefaultValue("10") int maxAttempts,
+    // retries wait a random time up to the backoff, which doubles with every attempt up to the maximum
+    @DefaultValue("100ms") Duration initialBackoff,
+    @DefaultValue("30s") Duration maxBackoff,
+    // file the file sink appends bulk requests to
+    @DefaultValue("search-operations.ndjson") Path filePath,
+    // file bulk requests given up on are appended to, for replaying them once the search engine is back
+    @DefaultValue("search-operations.dead-letter.ndjson") Path deadLetterPath,
+    // how long stopping waits for pending operations to be delivered before dead lettering them
+    @DefaultValue("30s") Duration shutdownTimeout)
+{}
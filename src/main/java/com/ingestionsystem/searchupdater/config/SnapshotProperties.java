@@ -0,0 +1,16 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "searchupdater.snapshot")
+public record SnapshotProperties(
+    // whether products and offers are written to a snapshot file periodically and on shutdown,
+    // and restored from it on startup
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("catalog.snapshot") Path path,
+    @DefaultValue("PT5M") Duration interval)
+{}
@@ -0,0 +1,25 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * JDBC batching of the writes buffered in write-behind mode. Inserts and updates are ordered by entity,
+ * so writes of products and offers interleaved by the providers still fill whole batches.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "searchupdater.write-behind", name = "enabled", havingValue = "true")
+public class WriteBehindConfiguration {
+
+    @Bean
+    public HibernatePropertiesCustomizer writeBehindHibernateProperties(WriteBehindProperties properties) {
+        return hibernateProperties -> {
+            hibernateProperties.put(AvailableSettings.STATEMENT_BATCH_SIZE, properties.batchSize());
+            hibernateProperties.put(AvailableSettings.ORDER_INSERTS, true);
+            hibernateProperties.put(AvailableSettings.ORDER_UPDATES, true);
+        };
+    }
+}
@@ -0,0 +1,13 @@
+package com.ingestionsystem.searchupdater.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "searchupdater.write-behind")
+public record WriteBehindProperties(
+    // whether entity writes are buffered until the end of a transaction (a request or a chunk of a batch)
+    // instead of being flushed before every query, so they can be sent in JDBC batches
+    @DefaultValue("false") boolean enabled,
+    // statements sent in one JDBC batch when write-behind is enabled
+    @DefaultValue("100") int batchSize)
+{}
@@ -0,0 +1,46 @@
+package com.ingestionsystem.searchupdater.controller;
+
+import com.ingestionsystem.searchupdater.async.AsyncIngestionService;
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.ingestionsystem.searchupdater.config.WireFormatConfiguration.APPLICATION_SMILE_VALUE;
+
+@RestController
+@RequestMapping("/api")
+@ConditionalOnProperty(prefix = "searchupdater.async", name = "enabled", havingValue = "true")
+public class AsyncUpdaterController {
+    private final AsyncIngestionService asyncIngestionService;
+
+    @Autowired
+    public AsyncUpdaterController(AsyncIngestionService asyncIngestionService) {
+        this.asyncIngestionService = asyncIngestionService;
+    }
+
+    @PostMapping(path = "/ingest/async",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE},
+            produces = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<?> acceptRequest(@RequestBody IngestionRequest request) {
+        try {
+            var ticket = asyncIngestionService.submit(request);
+            return ResponseEntity.accepted().body(ticket);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").body(e.getMessage());
+        }
+    }
+
+    @GetMapping(path = "/operations/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamOperations(@RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId) {
+        return asyncIngestionService.subscribe(lastEventId);
+    }
+}
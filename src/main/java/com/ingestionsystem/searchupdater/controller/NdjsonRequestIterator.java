@@ -0,0 +1,127 @@
+package com.ingestionsystem.searchupdater.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads requests of a streamed body one by one.
+ * NDJSON is read line by line and blank lines are skipped. A malformed line is returned as a null request
+ * and its parsing error is kept by its index, so it's answered in its place and the following lines are still read.
+ * A sequence of Smile or CBOR values can't be resynchronized after a malformed value,
+ * so it ends the iteration instead, and the parsing error is available afterwards.
+ */
+class NdjsonRequestIterator implements Iterator<IngestionRequest>, AutoCloseable {
+    // set when reading NDJSON
+    private final BufferedReader lines;
+    private final ObjectReader reader;
+    // set when reading a sequence of binary values
+    private final MappingIterator<IngestionRequest> values;
+    // index of a malformed line -> its parsing error, until it's taken
+    private final Map<Integer, String> lineErrors = new HashMap<>();
+    private int index;
+    private boolean hasNext;
+    private IngestionRequest next;
+    private RuntimeException parsingError;
+
+    private NdjsonRequestIterator(BufferedReader lines, ObjectReader reader, MappingIterator<IngestionRequest> values) {
+        this.lines = lines;
+        this.reader = reader;
+        this.values = values;
+    }
+
+    static NdjsonRequestIterator ofLines(BufferedReader lines, ObjectReader reader) {
+        return new NdjsonRequestIterator(lines, reader, null);
+    }
+
+    static NdjsonRequestIterator ofValues(MappingIterator<IngestionRequest> values) {
+        return new NdjsonRequestIterator(null, null, values);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (hasNext) {
+            return true;
+        }
+        if (parsingError != null) {
+            return false;
+        }
+        hasNext = lines != null ? readLine() : readValue();
+        return hasNext;
+    }
+
+    @Override
+    public IngestionRequest next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        var request = next;
+        next = null;
+        hasNext = false;
+        index++;
+        return request;
+    }
+
+    /**
+     * Returns and forgets the parsing error of the line with the index, or null when the line was well-formed.
+     */
+    String takeLineError(int index) {
+        return lineErrors.remove(index);
+    }
+
+    RuntimeException getParsingError() {
+        return parsingError;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (values != null) {
+            values.close();
+        }
+    }
+
+    private boolean readLine() {
+        try {
+            String line;
+            do {
+                line = lines.readLine();
+            } while (line != null && line.isBlank());
+            if (line == null) {
+                return false;
+            }
+            try {
+                next = reader.readValue(line);
+            } catch (JsonProcessingException e) {
+                lineErrors.put(index, "Malformed request: " + e.getOriginalMessage());
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean readValue() {
+        try {
+            if (values.hasNext()) {
+                next = values.next();
+                return true;
+            }
+        } catch (RuntimeException e) {
+            if (!(e instanceof RuntimeJsonMappingException) && !(e.getCause() instanceof JsonProcessingException)) {
+                throw e;
+            }
+            parsingError = e;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,29 @@
+package com.ingestionsystem.searchupdater.controller;
+
+import com.ingestionsystem.searchupdater.oplog.OperationLog;
+import com.ingestionsystem.searchupdater.oplog.OperationPage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api")
+@ConditionalOnProperty(prefix = "searchupdater.operation-log", name = "enabled", havingValue = "true")
+public class OperationLogController {
+    private final OperationLog operationLog;
+
+    @Autowired
+    public OperationLogController(OperationLog operationLog) {
+        this.operationLog = operationLog;
+    }
+
+    @GetMapping(path = "/operations", produces = MediaType.APPLICATION_JSON_VALUE)
+    public OperationPage getOperations(@RequestParam(defaultValue = "0") long after,
+                                       @RequestParam(defaultValue = "1000") int limit) {
+        return operationLog.read(after, limit);
+    }
+}
@@ -1,28 +1,54 @@
 package com.ingestionsystem.searchupdater.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import com.ingestionsystem.searchupdater.service.IngestionResult;
 import com.ingestionsystem.searchupdater.service.UpdaterService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.ingestionsystem.searchupdater.config.WireFormatConfiguration.APPLICATION_SMILE_VALUE;
+
 @RestController
 @RequestMapping("/api")
 public class UpdaterController {
     private final UpdaterService updaterService;
+    private final ObjectMapper objectMapper;
+
+    private final ObjectMapper smileMapper;
+    private final ObjectMapper cborMapper;
 
     @Autowired
-    public UpdaterController(UpdaterService updaterService) {
+    public UpdaterController(UpdaterService updaterService, ObjectMapper objectMapper,
+                             MappingJackson2SmileHttpMessageConverter smileConverter,
+                             MappingJackson2CborHttpMessageConverter cborConverter) {
         this.updaterService = updaterService;
+        this.objectMapper = objectMapper;
+        this.smileMapper = smileConverter.getObjectMapper();
+        this.cborMapper = cborConverter.getObjectMapper();
     }
 
     @PostMapping(path = "/ingest",
-            consumes = MediaType.APPLICATION_JSON_VALUE,
-            produces = MediaType.APPLICATION_JSON_VALUE)
+            consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE},
+            produces = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE})
     public ResponseEntity<?> getOperations(@RequestBody IngestionRequest request) {
         try {
             var result = updaterService.getBaseSearchEngineOperations(request);
@@ -31,5 +57,74 @@ public class UpdaterController {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
-}
 
+    @PostMapping(path = "/ingest/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE},
+            produces = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<?> getBatchOperations(@RequestBody List<IngestionRequest> requests) {
+        try {
+            var result = updaterService.getBatchSearchEngineOperations(requests);
+            return ResponseEntity.ok().body(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @PostMapping(path = "/ingest/stream",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE},
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public void streamOperations(InputStream body, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        // answered in the format of the request: NDJSON, or a sequence of Smile or CBOR values
+        var contentType = MediaType.parseMediaType(request.getContentType());
+        var mapper = getStreamMapper(contentType);
+        response.setContentType(new MediaType(contentType.getType(), contentType.getSubtype()).toString());
+        var reader = mapper.readerFor(IngestionRequest.class);
+        try (var requests = mapper == objectMapper
+                ? NdjsonRequestIterator.ofLines(
+                        new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)), reader)
+                : NdjsonRequestIterator.ofValues(reader.readValues(body));
+             var generator = mapper.getFactory().createGenerator(response.getOutputStream())) {
+            if (mapper == objectMapper) {
+                generator.setRootValueSeparator(null);
+            }
+            updaterService.processRequests(requests, result -> {
+                // a malformed line reaches the service as a null request, it's answered with its parsing error
+                var lineError = requests.takeLineError(result.index());
+                writeResult(mapper, generator, lineError != null ? IngestionResult.failure(result.index(), lineError) : result);
+            });
+            if (requests.getParsingError() != null) {
+                // everything before the malformed value is already processed and written, stop here
+                writeLine(mapper, generator, IngestionResult.failure(-1, requests.getParsingError().getMessage()));
+            }
+        }
+    }
+
+    private ObjectMapper getStreamMapper(MediaType contentType) {
+        if (contentType.isCompatibleWith(MediaType.APPLICATION_CBOR)) {
+            return cborMapper;
+        }
+        if (contentType.isCompatibleWith(MediaType.valueOf(APPLICATION_SMILE_VALUE))) {
+            return smileMapper;
+        }
+        return objectMapper;
+    }
+
+    // every request is answered with its result, so clients can match outputs to inputs by index
+    private void writeResult(ObjectMapper mapper, JsonGenerator generator, IngestionResult result) {
+        try {
+            writeLine(mapper, generator, result);
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeLine(ObjectMapper mapper, JsonGenerator generator, Object value) throws IOException {
+        mapper.writeValue(generator, value);
+        if (mapper == objectMapper) {
+            // binary values are self-delimiting, only NDJSON needs the line break
+            generator.writeRaw('\n');
+        }
+    }
+}
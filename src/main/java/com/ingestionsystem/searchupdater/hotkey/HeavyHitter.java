@@ -0,0 +1,10 @@
+package com.ingestionsystem.searchupdater.hotkey;
+
+/**
+ * Estimated count of a product. The true count is between count - error and count.
+ */
+public record HeavyHitter(
+    String productId,
+    long count,
+    long error)
+{}
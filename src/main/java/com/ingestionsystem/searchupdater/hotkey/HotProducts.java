@@ -0,0 +1,84 @@
+package com.ingestionsystem.searchupdater.hotkey;
+
+import com.ingestionsystem.searchupdater.config.HotProductProperties;
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+import com.ingestionsystem.searchupdater.operation.DeleteOperation;
+import com.ingestionsystem.searchupdater.operation.PartialUpdateOperation;
+import com.ingestionsystem.searchupdater.operation.UpsertOperation;
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Products which drive the load: the ones most often targeted by requests, the ones most often in emitted operations
+ * and the ones with the most offers. Every sketch keeps a fixed number of products whatever the number of products
+ * seen, so counts of products outside the top are approximate, see {@link SpaceSaving}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "searchupdater.hot-products", name = "enabled", havingValue = "true")
+public class HotProducts {
+
+    private final SpaceSaving requests;
+    private final SpaceSaving operations;
+    private final LargestValues offers;
+    private final int top;
+
+    @Autowired
+    public HotProducts(HotProductProperties properties) {
+        this.requests = new SpaceSaving(properties.capacity());
+        this.operations = new SpaceSaving(properties.capacity());
+        this.offers = new LargestValues(properties.capacity());
+        this.top = properties.top();
+    }
+
+    /**
+     * Counts the product a request targets. Offer deletes name no product and aren't counted.
+     */
+    public void recordRequest(IngestionRequest request) {
+        if (request == null || request.operation() == null) {
+            return;
+        }
+        var productId = switch (request.operation()) {
+            case UPSERT_PRODUCT, DELETE_PRODUCT -> request.productId();
+            case UPSERT_OFFER -> request.relatedProductId();
+            case DELETE_OFFER -> null;
+        };
+        if (productId != null) {
+            requests.add(productId, 1);
+        }
+    }
+
+    /**
+     * Counts products of emitted operations and records offer counts of emitted documents. A partial update carries
+     * only the change, so it adjusts the offer count of a product already kept by its last full document.
+     */
+    public void recordOperations(List<BaseSearchEngineOperation> emitted) {
+        for (var operation : emitted) {
+            operations.add(operation.getProductId(), 1);
+            if (operation instanceof UpsertOperation upsert) {
+                offers.put(upsert.getProductId(), upsert.getOfferNames().size());
+            } else if (operation instanceof PartialUpdateOperation partial) {
+                offers.adjust(partial.getProductId(),
+                        partial.getAddedOfferNames().size() - partial.getRemovedOfferNames().size());
+            } else if (operation instanceof DeleteOperation) {
+                offers.remove(operation.getProductId());
+            }
+        }
+    }
+
+    public HotProductsReport report() {
+        return report(top);
+    }
+
+    public HotProductsReport report(int limit) {
+        return new HotProductsReport(
+                requests.top(limit),
+                operations.top(limit),
+                offers.top(limit).stream()
+                        .map(keyValue -> new LargestProduct(keyValue.key(), keyValue.value()))
+                        .toList());
+    }
+}
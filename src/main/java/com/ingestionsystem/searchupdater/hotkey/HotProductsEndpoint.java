@@ -0,0 +1,28 @@
+package com.ingestionsystem.searchupdater.hotkey;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposes the hot products as /actuator/hotproducts, with an optional limit parameter.
+ */
+@Component
+@ConditionalOnProperty(prefix = "searchupdater.hot-products", name = "enabled", havingValue = "true")
+@Endpoint(id = "hotproducts")
+public class HotProductsEndpoint {
+    private final HotProducts hotProducts;
+
+    @Autowired
+    public HotProductsEndpoint(HotProducts hotProducts) {
+        this.hotProducts = hotProducts;
+    }
+
+    @ReadOperation
+    public HotProductsReport hotProducts(@Nullable Integer limit) {
+        return limit != null ? hotProducts.report(Math.max(0, limit)) : hotProducts.report();
+    }
+}
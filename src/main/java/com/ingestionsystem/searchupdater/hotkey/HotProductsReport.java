@@ -0,0 +1,12 @@
+package com.ingestionsystem.searchupdater.hotkey;
+
+import java.util.List;
+
+public record HotProductsReport(
+    // products most often targeted by requests
+    List<HeavyHitter> requests,
+    // products most often in emitted operations
+    List<HeavyHitter> operations,
+    // products with the most offers in their last emitted documents
+    List<LargestProduct> offers)
+{}
@@ -0,0 +1,9 @@
+package com.ingestionsystem.searchupdater.hotkey;
+
+/**
+ * Offer count of a product in its last emitted document.
+ */
+public record LargestProduct(
+    String productId,
+    long offers)
+{}
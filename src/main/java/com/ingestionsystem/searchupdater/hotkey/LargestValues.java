@@ -0,0 +1,72 @@
+package com.ingestionsystem.searchupdater.hotkey;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The capacity keys with the largest last reported values. A key whose value is smaller than every kept one
+ * isn't kept, so a key which shrank may be reported while larger ones reported before it are already gone.
+ */
+public class LargestValues {
+    private final int capacity;
+    private final Map<String, KeyValue> values = new HashMap<>();
+    // the same values ordered by value, the smallest first
+    private final TreeSet<KeyValue> byValue = new TreeSet<>(
+            Comparator.comparingLong(KeyValue::value).thenComparing(KeyValue::key));
+
+    public record KeyValue(String key, long value) {}
+
+    public LargestValues(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public synchronized void put(String key, long value) {
+        var previous = values.get(key);
+        if (previous != null) {
+            byValue.remove(previous);
+        } else if (values.size() >= capacity) {
+            if (value <= byValue.first().value()) {
+                return;
+            }
+            values.remove(byValue.pollFirst().key());
+        }
+        var keyValue = new KeyValue(key, value);
+        values.put(key, keyValue);
+        byValue.add(keyValue);
+    }
+
+    /**
+     * Adds the change to the value of a kept key. A key which isn't kept stays out, its value is unknown.
+     */
+    public synchronized void adjust(String key, long change) {
+        var previous = values.get(key);
+        if (previous != null && change != 0) {
+            byValue.remove(previous);
+            var keyValue = new KeyValue(key, previous.value() + change);
+            values.put(key, keyValue);
+            byValue.add(keyValue);
+        }
+    }
+
+    public synchronized void remove(String key) {
+        var previous = values.remove(key);
+        if (previous != null) {
+            byValue.remove(previous);
+        }
+    }
+
+    /**
+     * Returns up to limit keys with the largest values, the largest first.
+     */
+    public synchronized List<KeyValue> top(int limit) {
+        var top = new ArrayList<KeyValue>(Math.min(limit, values.size()));
+        for (var iterator = byValue.descendingIterator(); iterator.hasNext() && top.size() < limit; ) {
+            top.add(iterator.next());
+        }
+        return top;
+    }
+}
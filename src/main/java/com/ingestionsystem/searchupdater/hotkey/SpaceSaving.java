@@ -0,0 +1,70 @@
+package com.ingestionsystem.searchupdater.hotkey;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving heavy hitters sketch counting at most capacity keys. When it's full, a new key replaces the key
+ * with the smallest count and takes over that count as its possible overestimation. Counts are never underestimated
+ * and every key with a true count above total / capacity is kept.
+ */
+public class SpaceSaving {
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    // the same counters ordered by count, the smallest first
+    private final TreeSet<Counter> byCount = new TreeSet<>(
+            Comparator.comparingLong((Counter counter) -> counter.count).thenComparing(counter -> counter.key));
+
+    private static class Counter {
+        private final String key;
+        private long count;
+        private final long error;
+
+        private Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    public SpaceSaving(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public synchronized void add(String key, long weight) {
+        if (weight <= 0) {
+            return;
+        }
+        var counter = counters.get(key);
+        if (counter != null) {
+            // removed and added again, the set is ordered by the count being changed
+            byCount.remove(counter);
+            counter.count += weight;
+        } else if (counters.size() < capacity) {
+            counter = new Counter(key, weight, 0);
+            counters.put(key, counter);
+        } else {
+            var smallest = byCount.pollFirst();
+            counters.remove(smallest.key);
+            counter = new Counter(key, smallest.count + weight, smallest.count);
+            counters.put(key, counter);
+        }
+        byCount.add(counter);
+    }
+
+    /**
+     * Returns up to limit keys with the highest counts, the highest first.
+     */
+    public synchronized List<HeavyHitter> top(int limit) {
+        var top = new ArrayList<HeavyHitter>(Math.min(limit, counters.size()));
+        for (var iterator = byCount.descendingIterator(); iterator.hasNext() && top.size() < limit; ) {
+            var counter = iterator.next();
+            top.add(new HeavyHitter(counter.key, counter.count, counter.error));
+        }
+        return top;
+    }
+}
@@ -0,0 +1,181 @@
+package com.ingestionsystem.searchupdater.index;
+
+import com.ingestionsystem.searchupdater.config.FingerprintProperties;
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+import com.ingestionsystem.searchupdater.operation.UpsertOperation;
+import com.ingestionsystem.searchupdater.store.StateStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+/**
+ * Fingerprints of the last searchable product documents emitted per product, so an upsert of a document equal
+ * to the last one emitted is suppressed. A fingerprint is a 64-bit hash of the product name and the sorted offer names.
+ * The cache is bounded and evicts the least recently used products, their next upsert is always emitted.
+ * Fingerprints recorded by a transaction take effect when it commits, while its product locks are still held.
+ */
+@Component
+@ConditionalOnProperty(prefix = "searchupdater.fingerprints", name = "enabled", havingValue = "true")
+public class DocumentFingerprints {
+
+    private final static Logger logger = LoggerFactory.getLogger(DocumentFingerprints.class);
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private final StateStore stateStore;
+    // productId -> fingerprint, in access order, guarded by itself
+    private final LinkedHashMap<String, Long> fingerprints;
+    private final Counter suppressed;
+
+    @Autowired
+    public DocumentFingerprints(StateStore stateStore, FingerprintProperties properties,
+                                MeterRegistry meterRegistry) {
+        this.stateStore = stateStore;
+        var maxSize = Math.max(1, properties.maxSize());
+        this.fingerprints = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.suppressed = meterRegistry.counter("searchupdater.fingerprints.suppressed");
+        Gauge.builder("searchupdater.fingerprints.size", this, DocumentFingerprints::size).register(meterRegistry);
+    }
+
+    /**
+     * Fills the cache with documents of the current state, assuming it was all emitted.
+     * Called once the catalog snapshot is restored.
+     */
+    @Transactional
+    public void rebuild() {
+        var rebuilt = new HashMap<String, Long>();
+        try (var entries = stateStore.streamDocumentEntries()) {
+            String productId = null;
+            String productName = null;
+            var offerNames = new ArrayList<String>();
+            for (var iterator = entries.iterator(); iterator.hasNext(); ) {
+                var entry = iterator.next();
+                if (!entry.productId().equals(productId)) {
+                    if (productId != null) {
+                        rebuilt.put(productId, fingerprint(productName, offerNames));
+                    }
+                    productId = entry.productId();
+                    productName = entry.productName();
+                    offerNames.clear();
+                }
+                offerNames.add(entry.offerName());
+            }
+            if (productId != null) {
+                rebuilt.put(productId, fingerprint(productName, offerNames));
+            }
+        }
+        synchronized (fingerprints) {
+            fingerprints.clear();
+            fingerprints.putAll(rebuilt);
+        }
+        logger.info("Rebuilt document fingerprints of " + rebuilt.size() + " products");
+    }
+
+    /**
+     * Returns the operations without upserts of documents equal to the last ones emitted, in the current transaction.
+     */
+    public List<BaseSearchEngineOperation> filter(List<BaseSearchEngineOperation> operations) {
+        if (operations.isEmpty()) {
+            return operations;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Operations can only be filtered in a transaction");
+        }
+        var recorded = recordedInTransaction();
+        var emitted = new ArrayList<BaseSearchEngineOperation>(operations.size());
+        for (var operation : operations) {
+            var productId = operation.getProductId();
+            if (operation instanceof UpsertOperation upsert) {
+                var fingerprint = fingerprint(upsert.getProductName(), upsert.getOfferNames());
+                var last = recorded.containsKey(productId) ? recorded.get(productId) : get(productId);
+                if (last != null && last == fingerprint) {
+                    suppressed.increment();
+                    continue;
+                }
+                recorded.put(productId, fingerprint);
+            } else {
+                // the document is deleted or changed in place, the next upsert is emitted whatever it contains
+                recorded.put(productId, null);
+            }
+            emitted.add(operation);
+        }
+        return emitted;
+    }
+
+    static long fingerprint(String productName, List<String> offerNames) {
+        var sortedOfferNames = offerNames.toArray(String[]::new);
+        Arrays.sort(sortedOfferNames);
+        var hash = hash(FNV_OFFSET_BASIS, productName);
+        for (var offerName : sortedOfferNames) {
+            hash = hash(hash, offerName);
+        }
+        return hash;
+    }
+
+    // FNV-1a over the length and the characters, so names split differently don't hash the same
+    private static long hash(long hash, String value) {
+        var length = value != null ? value.length() : -1;
+        hash = (hash ^ length) * FNV_PRIME;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private Long get(String productId) {
+        synchronized (fingerprints) {
+            return fingerprints.get(productId);
+        }
+    }
+
+    private int size() {
+        synchronized (fingerprints) {
+            return fingerprints.size();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Long> recordedInTransaction() {
+        var recorded = (Map<String, Long>) TransactionSynchronizationManager.getResource(this);
+        if (recorded != null) {
+            return recorded;
+        }
+        var fingerprintsByProduct = new HashMap<String, Long>();
+        TransactionSynchronizationManager.bindResource(this, fingerprintsByProduct);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            // runs before every afterCompletion callback, so before the product locks are released
+            @Override
+            public void afterCommit() {
+                synchronized (fingerprints) {
+                    fingerprintsByProduct.forEach((productId, fingerprint) -> {
+                        if (fingerprint != null) {
+                            fingerprints.put(productId, fingerprint);
+                        } else {
+                            fingerprints.remove(productId);
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(DocumentFingerprints.this);
+            }
+        });
+        return fingerprintsByProduct;
+    }
+}
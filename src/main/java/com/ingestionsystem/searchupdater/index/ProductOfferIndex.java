@@ -0,0 +1,188 @@
+package com.ingestionsystem.searchupdater.index;
+
+import com.ingestionsystem.searchupdater.repository.OfferRepository;
+import com.ingestionsystem.searchupdater.repository.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-through in-memory index of offers (id and name) related to a product.
+ * Providers update it right after writing the entities, so reads of a product's offers don't go to the database.
+ * A product missing in the index is loaded from the database on first read or before its offers change,
+ * so the index stays correct when writes are buffered and not flushed before queries.
+ * Products touched by a transaction which is rolled back are evicted and loaded again on next read.
+ * Used by the JPA state store only.
+ */
+@Component
+@ConditionalOnProperty(prefix = "searchupdater", name = "state-store", havingValue = "jpa", matchIfMissing = true)
+public class ProductOfferIndex {
+
+    private final static Logger logger = LoggerFactory.getLogger(ProductOfferIndex.class);
+    private final ProductRepository productRepository;
+    private final OfferRepository offerRepository;
+    // productId -> (offerId -> offerName), in insertion order
+    private final Map<String, Map<String, String>> offersByProduct = new ConcurrentHashMap<>();
+    // offerId -> productId, for offers of indexed products only
+    private final Map<String, String> productByOffer = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public ProductOfferIndex(ProductRepository productRepository, OfferRepository offerRepository,
+                             MeterRegistry meterRegistry) {
+        this.productRepository = productRepository;
+        this.offerRepository = offerRepository;
+        this.hits = meterRegistry.counter("searchupdater.index.hits");
+        this.misses = meterRegistry.counter("searchupdater.index.misses");
+        Gauge.builder("searchupdater.index.products", offersByProduct, Map::size).register(meterRegistry);
+        Gauge.builder("searchupdater.index.offers", productByOffer, Map::size).register(meterRegistry);
+    }
+
+    // called once the catalog snapshot is restored
+    @Transactional
+    public void rebuild() {
+        offersByProduct.clear();
+        productByOffer.clear();
+        try (var productIds = productRepository.streamAllIds()) {
+            productIds.forEach(productId -> offersByProduct.put(productId, newOffers()));
+        }
+        try (var entries = offerRepository.streamAllLinkedEntries()) {
+            entries.forEach(entry -> {
+                offersByProduct.computeIfAbsent(entry.productId(), id -> newOffers()).put(entry.id(), entry.name());
+                productByOffer.put(entry.id(), entry.productId());
+            });
+        }
+        logger.info("Rebuilt product offer index with " + offersByProduct.size() + " products and "
+                + productByOffer.size() + " offers");
+    }
+
+    public List<String> getOfferNames(String productId) {
+        var offers = getOffers(productId);
+        synchronized (offers) {
+            return List.copyOf(offers.values());
+        }
+    }
+
+    public int countOffers(String productId) {
+        return getOffers(productId).size();
+    }
+
+    /**
+     * Records that the offer is related to the product (or to no product if productId is null),
+     * removing it from the product it was related to before.
+     */
+    public void putOffer(String productId, String offerId, String offerName) {
+        if (productId != null) {
+            getOffers(productId);
+        }
+        productByOffer.compute(offerId, (id, previousProductId) -> {
+            if (previousProductId != null && !previousProductId.equals(productId)) {
+                removeFromProduct(previousProductId, offerId);
+            }
+            if (productId == null) {
+                return null;
+            }
+            evictOnRollback(productId);
+            var indexed = offersByProduct.computeIfPresent(productId, (key, offers) -> {
+                offers.put(offerId, offerName);
+                return offers;
+            });
+            // the product could be evicted in the meantime, then the offer is loaded with it on next read
+            return indexed != null ? productId : null;
+        });
+    }
+
+    public void removeOffer(String productId, String offerId) {
+        if (productId != null) {
+            getOffers(productId);
+        }
+        var indexedProductId = productByOffer.remove(offerId);
+        if (indexedProductId != null) {
+            removeFromProduct(indexedProductId, offerId);
+        }
+    }
+
+    public void removeProduct(String productId) {
+        evictOnRollback(productId);
+        discard(productId);
+    }
+
+    private void discard(String productId) {
+        var offers = offersByProduct.remove(productId);
+        if (offers != null) {
+            List<String> offerIds;
+            synchronized (offers) {
+                offerIds = List.copyOf(offers.keySet());
+            }
+            offerIds.forEach(offerId -> productByOffer.remove(offerId, productId));
+        }
+    }
+
+    private Map<String, String> getOffers(String productId) {
+        var offers = offersByProduct.get(productId);
+        if (offers != null) {
+            hits.increment();
+            return offers;
+        }
+        misses.increment();
+        // the loaded state may include uncommitted changes of the current transaction
+        evictOnRollback(productId);
+        // loaded outside of the map's locks, the maps are never locked one inside the other in reverse order
+        var entries = offerRepository.findEntriesByProductId(productId);
+        var loaded = newOffers();
+        entries.forEach(entry -> loaded.put(entry.id(), entry.name()));
+        var existing = offersByProduct.putIfAbsent(productId, loaded);
+        if (existing != null) {
+            return existing;
+        }
+        entries.forEach(entry -> productByOffer.put(entry.id(), productId));
+        return loaded;
+    }
+
+    private void removeFromProduct(String productId, String offerId) {
+        evictOnRollback(productId);
+        offersByProduct.computeIfPresent(productId, (key, offers) -> {
+            offers.remove(offerId);
+            return offers;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void evictOnRollback(String productId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        var touchedProductIds = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (touchedProductIds == null) {
+            var productIds = new HashSet<String>();
+            TransactionSynchronizationManager.bindResource(this, productIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ProductOfferIndex.this);
+                    if (status != STATUS_COMMITTED) {
+                        productIds.forEach(ProductOfferIndex.this::discard);
+                    }
+                }
+            });
+            touchedProductIds = productIds;
+        }
+        touchedProductIds.add(productId);
+    }
+
+    private static Map<String, String> newOffers() {
+        return Collections.synchronizedMap(new LinkedHashMap<>());
+    }
+}
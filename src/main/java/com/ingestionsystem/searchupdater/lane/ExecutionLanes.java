@@ -0,0 +1,97 @@
+package com.ingestionsystem.searchupdater.lane;
+
+import com.ingestionsystem.searchupdater.config.LaneProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Single-threaded executors, each running its tasks strictly in submission order.
+ * Tasks are routed by a key (the id of the product they belong to), so all tasks of a product run in one lane
+ * one after another, while different lanes run in parallel.
+ * A full lane blocks the submitting thread until it has room again.
+ */
+@Component
+@ConditionalOnProperty(prefix = "searchupdater.lanes", name = "enabled", havingValue = "true")
+public class ExecutionLanes {
+
+    private final ThreadPoolExecutor[] lanes;
+    private final Counter[] processed;
+
+    @Autowired
+    public ExecutionLanes(LaneProperties laneProperties, MeterRegistry meterRegistry) {
+        var count = laneProperties.count() > 0 ? laneProperties.count() : Runtime.getRuntime().availableProcessors();
+        this.lanes = new ThreadPoolExecutor[count];
+        this.processed = new Counter[count];
+        for (int i = 0; i < count; i++) {
+            var laneName = "lane-" + i;
+            var lane = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(Math.max(1, laneProperties.queueCapacity())),
+                    task -> new Thread(task, laneName),
+                    ExecutionLanes::waitForRoom);
+            lanes[i] = lane;
+            var tag = String.valueOf(i);
+            processed[i] = meterRegistry.counter("searchupdater.lanes.processed", "lane", tag);
+            Gauge.builder("searchupdater.lanes.queue.depth", lane, executor -> executor.getQueue().size())
+                    .tag("lane", tag)
+                    .register(meterRegistry);
+        }
+    }
+
+    public int count() {
+        return lanes.length;
+    }
+
+    /**
+     * Lane of the key, null keys go to the first lane.
+     */
+    public int laneOf(String key) {
+        if (key == null) {
+            return 0;
+        }
+        var hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    /**
+     * Runs the task in the lane, counting it as the given number of processed requests once it's done.
+     */
+    public <T> CompletableFuture<T> submit(int lane, int requests, Supplier<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.get();
+            } finally {
+                processed[lane].increment(requests);
+            }
+        }, lanes[lane]);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (var lane : lanes) {
+            lane.shutdown();
+        }
+        for (var lane : lanes) {
+            lane.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void waitForRoom(Runnable task, ThreadPoolExecutor lane) {
+        if (lane.isShutdown()) {
+            throw new RejectedExecutionException("Lane is shut down");
+        }
+        try {
+            lane.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for room in lane", e);
+        }
+    }
+}
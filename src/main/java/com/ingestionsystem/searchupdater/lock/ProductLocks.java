@@ -0,0 +1,145 @@
+package com.ingestionsystem.searchupdater.lock;
+
+import com.ingestionsystem.searchupdater.config.LockProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks keyed by product id, held until the transaction which acquired them completes.
+ * Requests touching the same product are serialized, so each of them sees offers of the product committed by the
+ * previous one, while requests for unrelated products only wait for each other on hash collisions.
+ * All stripes needed by a transaction should be requested at once: they are locked in ascending order,
+ * which rules out deadlocks. A transaction which already holds stripes and asks for more waits for them at most
+ * for the configured timeout and fails with CannotAcquireLockException instead of risking a deadlock.
+ */
+@Component
+public class ProductLocks {
+
+    private final ReentrantLock[] stripes;
+    private final long timeoutNanos;
+    private final Timer waitTimer;
+    private final Counter retries;
+
+    @Autowired
+    public ProductLocks(LockProperties lockProperties, MeterRegistry meterRegistry) {
+        this.stripes = new ReentrantLock[Math.max(1, lockProperties.stripes())];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.timeoutNanos = lockProperties.timeout().toNanos();
+        this.waitTimer = meterRegistry.timer("searchupdater.locks.wait");
+        this.retries = meterRegistry.counter("searchupdater.locks.retries");
+        Gauge.builder("searchupdater.locks.waiting", this, ProductLocks::countWaitingThreads).register(meterRegistry);
+    }
+
+    /**
+     * Locks stripes of the products (null ids are skipped) until the current transaction completes.
+     */
+    public Lease lock(Collection<String> productIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Product locks can only be acquired in a transaction");
+        }
+        var indexes = productIds.stream().filter(Objects::nonNull).mapToInt(this::stripeIndex)
+                .distinct().sorted().toArray();
+        var held = heldInTransaction();
+        var holdsOthers = held.stream().anyMatch(lease -> !lease.released);
+        var waitStart = System.nanoTime();
+        var locked = 0;
+        try {
+            for (var index : indexes) {
+                var stripe = stripes[index];
+                if (!holdsOthers || stripe.isHeldByCurrentThread()) {
+                    stripe.lock();
+                } else if (!stripe.tryLock(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    throw new CannotAcquireLockException("Timed out waiting for lock of product stripe " + index);
+                }
+                locked++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotAcquireLockException("Interrupted while waiting for product locks", e);
+        } finally {
+            waitTimer.record(System.nanoTime() - waitStart, TimeUnit.NANOSECONDS);
+            if (locked < indexes.length) {
+                unlock(Arrays.copyOf(indexes, locked));
+            }
+        }
+        var lease = new Lease(indexes);
+        held.add(lease);
+        return lease;
+    }
+
+    /**
+     * Counts a lock which had to be released and acquired again for a different set of products.
+     */
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    private int stripeIndex(String productId) {
+        var hash = productId.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), stripes.length);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Lease> heldInTransaction() {
+        var held = (List<Lease>) TransactionSynchronizationManager.getResource(this);
+        if (held != null) {
+            return held;
+        }
+        var leases = new ArrayList<Lease>();
+        TransactionSynchronizationManager.bindResource(this, leases);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(ProductLocks.this);
+                leases.forEach(Lease::release);
+            }
+        });
+        return leases;
+    }
+
+    private void unlock(int[] indexes) {
+        for (int i = indexes.length - 1; i >= 0; i--) {
+            stripes[indexes[i]].unlock();
+        }
+    }
+
+    private double countWaitingThreads() {
+        return Arrays.stream(stripes).mapToInt(ReentrantLock::getQueueLength).sum();
+    }
+
+    /**
+     * Stripes locked by one call, released when the transaction completes or earlier with release().
+     */
+    public final class Lease {
+        private final int[] indexes;
+        private boolean released;
+
+        private Lease(int[] indexes) {
+            this.indexes = indexes;
+        }
+
+        public void release() {
+            if (!released) {
+                released = true;
+                unlock(indexes);
+            }
+        }
+    }
+}
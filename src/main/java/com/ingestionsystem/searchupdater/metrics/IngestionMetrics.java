@@ -0,0 +1,136 @@
+package com.ingestionsystem.searchupdater.metrics;
+
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+import com.ingestionsystem.searchupdater.operation.SearchEngineOperationType;
+import com.ingestionsystem.searchupdater.operation.UpsertOperation;
+import com.ingestionsystem.searchupdater.providers.SearchEngineOperationProvider;
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the ingest pipeline: latency and SQL statements of every request by operation, provider and outcome,
+ * emitted operations by type, offer counts of emitted documents, and commit time and SQL statements of transactions.
+ * Timers and summaries publish histograms, so percentiles can be aggregated across instances.
+ */
+@Component
+public class IngestionMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final SqlStatementCounter sqlStatementCounter;
+    // "operation/provider/outcome" -> meters of requests with these tags
+    private final Map<String, RequestMeters> requestMeters = new ConcurrentHashMap<>();
+    private final Map<SearchEngineOperationType, Counter> emitted = new EnumMap<>(SearchEngineOperationType.class);
+    private final DistributionSummary documentOffers;
+    private final Timer commitTimer;
+    private final DistributionSummary transactionStatements;
+
+    private record RequestMeters(Timer timer, DistributionSummary statements) {}
+
+    /**
+     * Start of a measured request.
+     */
+    public record RequestSample(long startNanos, long startStatements) {}
+
+    @Autowired
+    public IngestionMetrics(MeterRegistry meterRegistry, SqlStatementCounter sqlStatementCounter) {
+        this.meterRegistry = meterRegistry;
+        this.sqlStatementCounter = sqlStatementCounter;
+        for (var type : SearchEngineOperationType.values()) {
+            emitted.put(type, meterRegistry.counter("searchupdater.operations.emitted", "type", type.name()));
+        }
+        this.documentOffers = DistributionSummary.builder("searchupdater.documents.offers")
+                .description("Offer names in emitted documents")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.commitTimer = Timer.builder("searchupdater.transactions.commit")
+                .description("Flush and commit of ingest transactions")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.transactionStatements = DistributionSummary.builder("searchupdater.transactions.statements")
+                .description("SQL statements of ingest transactions, including the flush")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public RequestSample startRequest() {
+        return new RequestSample(System.nanoTime(), sqlStatementCounter.count());
+    }
+
+    /**
+     * Records a request handled by the provider, which is null when the request was rejected before one was chosen.
+     * Statements written by the flush at the end of a chunk are recorded per transaction, not per request.
+     */
+    public void recordRequest(RequestSample sample, @Nullable IngestionRequest request,
+                              @Nullable SearchEngineOperationProvider provider, String outcome) {
+        var operation = request != null && request.operation() != null ? request.operation().name() : "none";
+        var providerName = provider != null ? provider.getClass().getSimpleName() : "none";
+        var meters = requestMeters.computeIfAbsent(operation + "/" + providerName + "/" + outcome,
+                key -> createRequestMeters(operation, providerName, outcome));
+        meters.timer().record(System.nanoTime() - sample.startNanos(), TimeUnit.NANOSECONDS);
+        meters.statements().record(sqlStatementCounter.count() - sample.startStatements());
+    }
+
+    /**
+     * Records operations emitted by committed transactions.
+     */
+    public void recordEmitted(List<BaseSearchEngineOperation> operations) {
+        for (var operation : operations) {
+            emitted.get(operation.getOperationType()).increment();
+            if (operation instanceof UpsertOperation upsert) {
+                documentOffers.record(upsert.getOfferNames().size());
+            }
+        }
+    }
+
+    /**
+     * Measures the commit and counts the statements of the current transaction, from now until it completes.
+     */
+    public void measureTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        var startStatements = sqlStatementCounter.count();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private long commitStart;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                commitStart = System.nanoTime();
+            }
+
+            @Override
+            public void afterCommit() {
+                commitTimer.record(System.nanoTime() - commitStart, TimeUnit.NANOSECONDS);
+                transactionStatements.record(sqlStatementCounter.count() - startStatements);
+            }
+        });
+    }
+
+    private RequestMeters createRequestMeters(String operation, String provider, String outcome) {
+        var timer = Timer.builder("searchupdater.requests")
+                .description("Requests handled by operation providers")
+                .tags("operation", operation, "provider", provider, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        var statements = DistributionSummary.builder("searchupdater.requests.statements")
+                .description("SQL statements executed by providers per request")
+                .tags("operation", operation, "provider", provider, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        return new RequestMeters(timer, statements);
+    }
+}
@@ -0,0 +1,28 @@
+package com.ingestionsystem.searchupdater.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts SQL statements Hibernate prepares on the current thread. A JDBC batch is prepared once however many rows
+ * it carries, so the count is the number of round trips rather than of rows. Registered with Hibernate
+ * by {@link com.ingestionsystem.searchupdater.config.MetricsConfiguration}, it counts nothing otherwise.
+ */
+@Component
+public class SqlStatementCounter implements StatementInspector {
+
+    private final ThreadLocal<long[]> statements = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public String inspect(String sql) {
+        statements.get()[0]++;
+        return sql;
+    }
+
+    /**
+     * Returns the number of statements prepared on the current thread so far.
+     */
+    public long count() {
+        return statements.get()[0];
+    }
+}
@@ -1,11 +1,20 @@
 package com.ingestionsystem.searchupdater.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.springframework.data.domain.Persistable;
 
 import java.util.Objects;
 
 @Entity
-public class Offer {
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NamedEntityGraph(name = Offer.WITH_PRODUCT, attributeNodes = @NamedAttributeNode("product"))
+public class Offer implements Persistable<String> {
+    // loads the offer together with its product, which providers read right after the offer
+    public static final String WITH_PRODUCT = "Offer.withProduct";
+
     @Id
     private String id;
     @Column
@@ -15,6 +24,11 @@ public class Offer {
     @JoinColumn(name = "offer_id")
     private Product product;
 
+    // set for an entity known not to exist in the database yet, so it's persisted without a select before insert
+    @Transient
+    private boolean isNew;
+
+    @Override
     public String getId() {
         return id;
     }
@@ -52,6 +66,21 @@ public class Offer {
         this.product = product;
     }
 
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    public void markNew() {
+        this.isNew = true;
+    }
+
+    @PrePersist
+    @PostLoad
+    public void markNotNew() {
+        this.isNew = false;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
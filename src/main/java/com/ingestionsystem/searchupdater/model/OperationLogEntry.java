@@ -0,0 +1,67 @@
+package com.ingestionsystem.searchupdater.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "operation_log")
+public class OperationLogEntry implements Persistable<Long> {
+    // assigned by the operation log, increasing in the order operations were emitted
+    @Id
+    private Long sequence;
+    @Column
+    private String productId;
+    @Lob
+    private String operation;
+    @Column
+    private Instant createdAt;
+
+    // entries are only appended, so a new one is persisted without a select before insert
+    @Transient
+    private boolean isNew;
+
+    public OperationLogEntry() {}
+
+    public OperationLogEntry(Long sequence, String productId, String operation, Instant createdAt) {
+        this.sequence = sequence;
+        this.productId = productId;
+        this.operation = operation;
+        this.createdAt = createdAt;
+        this.isNew = true;
+    }
+
+    @Override
+    public Long getId() {
+        return sequence;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    // operation serialized to JSON
+    public String getOperation() {
+        return operation;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PrePersist
+    @PostLoad
+    void markNotNew() {
+        this.isNew = false;
+    }
+}
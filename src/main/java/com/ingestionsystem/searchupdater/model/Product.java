@@ -1,11 +1,16 @@
 package com.ingestionsystem.searchupdater.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.springframework.data.domain.Persistable;
 
 import java.util.Objects;
 
 @Entity
-public class Product {
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+public class Product implements Persistable<String> {
     @Id
     private String id;
     @Column
@@ -14,6 +19,10 @@ public class Product {
     @Transient
     private boolean isValid;
 
+    // set for an entity known not to exist in the database yet, so it's persisted without a select before insert
+    @Transient
+    private boolean isNew;
+
     public Product() {}
 
     public Product(String id, String name) {
@@ -21,6 +30,7 @@ public class Product {
         this.name = name;
     }
 
+    @Override
     public String getId() {
         return id;
     }
@@ -41,6 +51,21 @@ public class Product {
         return id != null && name != null;
     }
 
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    public void markNew() {
+        this.isNew = true;
+    }
+
+    @PrePersist
+    @PostLoad
+    public void markNotNew() {
+        this.isNew = false;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
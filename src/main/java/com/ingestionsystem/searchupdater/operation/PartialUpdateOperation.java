@@ -0,0 +1,49 @@
+package com.ingestionsystem.searchupdater.operation;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Change of an existing searchable product: its new name, or offer names to add and to remove.
+ * Removing a name removes one occurrence of it, products may have offers with equal names.
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class PartialUpdateOperation extends BaseSearchEngineOperation {
+    // null when the name didn't change
+    private String productName;
+    private List<String> addedOfferNames;
+    private List<String> removedOfferNames;
+
+    public PartialUpdateOperation(String productId, String productName, List<String> addedOfferNames,
+                                  List<String> removedOfferNames) {
+        super(productId, SearchEngineOperationType.PARTIAL_UPDATE_SEARCHABLE_PRODUCT);
+        this.productName = productName;
+        this.addedOfferNames = addedOfferNames;
+        this.removedOfferNames = removedOfferNames;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public List<String> getAddedOfferNames() {
+        return addedOfferNames;
+    }
+
+    public void setAddedOfferNames(List<String> addedOfferNames) {
+        this.addedOfferNames = addedOfferNames;
+    }
+
+    public List<String> getRemovedOfferNames() {
+        return removedOfferNames;
+    }
+
+    public void setRemovedOfferNames(List<String> removedOfferNames) {
+        this.removedOfferNames = removedOfferNames;
+    }
+}
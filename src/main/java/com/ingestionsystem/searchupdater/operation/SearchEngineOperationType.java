@@ -2,5 +2,6 @@ package com.ingestionsystem.searchupdater.operation;
 
 public enum SearchEngineOperationType {
     UPSERT_SEARCHABLE_PRODUCT,
+    PARTIAL_UPDATE_SEARCHABLE_PRODUCT,
     DELETE_SEARCHABLE_PRODUCT
 }
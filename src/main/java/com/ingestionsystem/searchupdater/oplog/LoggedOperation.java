@@ -0,0 +1,5 @@
+package com.ingestionsystem.searchupdater.oplog;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+public record LoggedOperation(long sequence, @JsonRawValue String operation) {}
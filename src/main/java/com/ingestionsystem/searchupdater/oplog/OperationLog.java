@@ -0,0 +1,173 @@
+package com.ingestionsystem.searchupdater.oplog;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ingestionsystem.searchupdater.config.OperationLogProperties;
+import com.ingestionsystem.searchupdater.model.OperationLogEntry;
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+import com.ingestionsystem.searchupdater.repository.OperationLogRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Append-only log of emitted operations, written in the transaction which computed them (an outbox),
+ * so operations of a committed transaction are never lost and operations of a rolled back one never appear.
+ * Sequences are assigned in increasing order when operations are appended, but transactions may commit
+ * in a different order. Readers therefore only see entries up to the sequence before the oldest one
+ * of a transaction still in progress, so they never skip an entry which is committed later.
+ * <p>
+ * Entries are rows of the in-memory database and are lost on restart, the catalog snapshot doesn't keep them.
+ * With snapshots enabled only the last sequence survives a restart, so sequences keep increasing
+ * but entries appended after the last snapshot are gone for good.
+ */
+@Component
+@ConditionalOnProperty(prefix = "searchupdater.operation-log", name = "enabled", havingValue = "true")
+public class OperationLog {
+
+    private final static Logger logger = LoggerFactory.getLogger(OperationLog.class);
+    private final OperationLogRepository repository;
+    private final ObjectMapper objectMapper;
+    private final OperationLogProperties properties;
+    // guards assigning sequences together with registering them as in progress
+    private final Object sequenceLock = new Object();
+    private long lastSequence;
+    private final NavigableSet<Long> inProgress = new ConcurrentSkipListSet<>();
+
+    @Autowired
+    public OperationLog(OperationLogRepository repository, ObjectMapper objectMapper,
+                        OperationLogProperties properties) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void init() {
+        var maxSequence = repository.findMaxSequence();
+        synchronized (sequenceLock) {
+            lastSequence = maxSequence != null ? maxSequence : 0;
+        }
+    }
+
+    /**
+     * The last sequence assigned, written to the catalog snapshot so it outlives the in-memory database.
+     */
+    public long getLastSequence() {
+        synchronized (sequenceLock) {
+            return lastSequence;
+        }
+    }
+
+    /**
+     * Continues sequences after the given one, restored from a snapshot, so a restarted log never
+     * hands out sequences indexers have already processed.
+     */
+    public void continueAfter(long sequence) {
+        synchronized (sequenceLock) {
+            lastSequence = Math.max(lastSequence, sequence);
+        }
+    }
+
+    /**
+     * Appends operations in the current transaction.
+     */
+    public void append(List<BaseSearchEngineOperation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Operations can only be appended in a transaction");
+        }
+        var inTransaction = inProgressInTransaction();
+        long firstSequence;
+        synchronized (sequenceLock) {
+            firstSequence = lastSequence + 1;
+            lastSequence += operations.size();
+            for (var sequence = firstSequence; sequence <= lastSequence; sequence++) {
+                inProgress.add(sequence);
+                inTransaction.add(sequence);
+            }
+        }
+        var createdAt = Instant.now();
+        var entries = new ArrayList<OperationLogEntry>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            var operation = operations.get(i);
+            entries.add(new OperationLogEntry(firstSequence + i, operation.getProductId(), toJson(operation), createdAt));
+        }
+        repository.saveAll(entries);
+    }
+
+    /**
+     * Reads up to limit operations with sequences greater than after.
+     */
+    public OperationPage read(long after, int limit) {
+        var visibleSequence = getVisibleSequence();
+        var pageSize = Math.max(1, Math.min(limit, properties.maxPageSize()));
+        if (after >= visibleSequence) {
+            return new OperationPage(List.of(), after, visibleSequence);
+        }
+        var operations = repository.findBySequenceBetweenOrderBySequence(after + 1, visibleSequence, Limit.of(pageSize))
+                .stream()
+                .map(entry -> new LoggedOperation(entry.getSequence(), entry.getOperation()))
+                .toList();
+        var next = operations.isEmpty() ? after : operations.getLast().sequence();
+        return new OperationPage(operations, next, visibleSequence);
+    }
+
+    @Scheduled(initialDelayString = "${searchupdater.operation-log.truncate-interval:PT1M}",
+            fixedDelayString = "${searchupdater.operation-log.truncate-interval:PT1M}")
+    public void truncate() {
+        var deleted = repository.deleteCreatedBefore(Instant.now().minus(properties.retention()));
+        if (deleted > 0) {
+            logger.info("Truncated " + deleted + " operations older than " + properties.retention());
+        }
+    }
+
+    // the last sequence below every sequence of a transaction in progress
+    private long getVisibleSequence() {
+        synchronized (sequenceLock) {
+            var oldestInProgress = inProgress.ceiling(Long.MIN_VALUE);
+            return oldestInProgress != null ? oldestInProgress - 1 : lastSequence;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Long> inProgressInTransaction() {
+        var sequences = (Set<Long>) TransactionSynchronizationManager.getResource(this);
+        if (sequences != null) {
+            return sequences;
+        }
+        var appended = new HashSet<Long>();
+        TransactionSynchronizationManager.bindResource(this, appended);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(OperationLog.this);
+                // committed entries become visible, sequences of rolled back ones are left as gaps
+                inProgress.removeAll(appended);
+            }
+        });
+        return appended;
+    }
+
+    private String toJson(BaseSearchEngineOperation operation) {
+        try {
+            return objectMapper.writeValueAsString(operation);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
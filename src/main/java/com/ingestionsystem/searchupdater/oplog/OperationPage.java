@@ -0,0 +1,10 @@
+package com.ingestionsystem.searchupdater.oplog;
+
+import java.util.List;
+
+/**
+ * Operations after the requested sequence. Reading continues after next, which is the sequence of the last operation
+ * of the page or the requested one if the page is empty. lastSequence is the last sequence readers can see now,
+ * lower than a requested one only when the log was started anew.
+ */
+public record OperationPage(List<LoggedOperation> operations, long next, long lastSequence) {}
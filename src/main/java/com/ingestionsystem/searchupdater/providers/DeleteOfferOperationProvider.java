@@ -1,10 +1,9 @@
 package com.ingestionsystem.searchupdater.providers;
 
-import com.ingestionsystem.searchupdater.model.Offer;
+import com.ingestionsystem.searchupdater.config.DeltaProperties;
 import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
-import com.ingestionsystem.searchupdater.repository.OfferRepository;
-import com.ingestionsystem.searchupdater.repository.ProductRepository;
 import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import com.ingestionsystem.searchupdater.store.StateStore;
 import com.ingestionsystem.searchupdater.validation.FieldValidator;
 
 import java.util.ArrayList;
@@ -12,29 +11,25 @@ import java.util.List;
 
 public class DeleteOfferOperationProvider extends SearchEngineOperationProvider {
 
-    public DeleteOfferOperationProvider(ProductRepository productRepository, OfferRepository offerRepository, IngestionRequest request) {
-        super(productRepository, offerRepository, request);
+    public DeleteOfferOperationProvider(StateStore stateStore, DeltaProperties deltaProperties,
+                                        IngestionRequest request) {
+        super(stateStore, deltaProperties, request);
     }
 
     public List<BaseSearchEngineOperation> getSearchOperations(IngestionRequest request) {
         var operations = new ArrayList<BaseSearchEngineOperation>();
         var offerId = request.offerId();
-        var offerOptional = offerRepository.findById(offerId);
+        var offerOptional = stateStore.findOffer(offerId);
 
         offerOptional.ifPresent(offer -> {
-            offerRepository.deleteById(offerId);
+            stateStore.deleteOffer(offer);
             if (offer.getProduct() == null) {
                 return;
             }
             if (offer.getProduct().isValid()) {
                 var product = offer.getProduct();
-                var offers = offerRepository
-                        .findByProductId(product.getId())
-                        .stream()
-                        .map(Offer::getName)
-                        .toList();
-                if (!offers.isEmpty()) {
-                    operations.add(SearchEngineOperationProvider.getUpsertSearchEngineOperation(product, offers));
+                if (stateStore.countOffers(product.getId()) > 0) {
+                    operations.add(getOffersChangedOperation(product, List.of(), List.of(offer.getName()), request));
                 } else {
                     operations.add(SearchEngineOperationProvider.getDeleteSearchEngineOperation(product));
                 }
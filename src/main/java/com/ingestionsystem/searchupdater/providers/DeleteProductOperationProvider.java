@@ -1,10 +1,10 @@
 package com.ingestionsystem.searchupdater.providers;
 
+import com.ingestionsystem.searchupdater.config.DeltaProperties;
 import com.ingestionsystem.searchupdater.model.Product;
 import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
-import com.ingestionsystem.searchupdater.repository.OfferRepository;
-import com.ingestionsystem.searchupdater.repository.ProductRepository;
 import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import com.ingestionsystem.searchupdater.store.StateStore;
 import com.ingestionsystem.searchupdater.validation.FieldValidator;
 
 import java.util.ArrayList;
@@ -12,8 +12,9 @@ import java.util.List;
 
 public class DeleteProductOperationProvider extends SearchEngineOperationProvider {
 
-    public DeleteProductOperationProvider(ProductRepository productRepository, OfferRepository offerRepository, IngestionRequest request) {
-        super(productRepository, offerRepository, request);
+    public DeleteProductOperationProvider(StateStore stateStore, DeltaProperties deltaProperties,
+                                          IngestionRequest request) {
+        super(stateStore, deltaProperties, request);
     }
 
     @Override
@@ -21,14 +22,12 @@ public class DeleteProductOperationProvider extends SearchEngineOperationProvide
         var operations = new ArrayList<BaseSearchEngineOperation>();
 
         var productId = request.productId();
-        var productOptional = productRepository.findById(productId);
+        var productOptional = stateStore.findProduct(productId);
         productOptional.ifPresent(product -> {
-            var offers = offerRepository.findByProductId(product.getId());
-            if (!offers.isEmpty()) {
+            if (deleteAssociationBetweenProductAndOffers(product) > 0) {
                 operations.add(SearchEngineOperationProvider.getDeleteSearchEngineOperation(product));
             }
-            deleteAssociationBetweenProductAndOffers(product);
-            productRepository.delete(product);
+            stateStore.deleteProduct(product);
         });
         return operations;
     }
@@ -38,8 +37,8 @@ public class DeleteProductOperationProvider extends SearchEngineOperationProvide
         FieldValidator.validateField("productId", request.productId(), request.operation());
     }
 
-    private void deleteAssociationBetweenProductAndOffers(Product product) {
-        var offers = offerRepository.findByProductId(product.getId());
-        offers.forEach(offer -> offer.setProduct(null));
+    // returns number of offers which were related to the product
+    private int deleteAssociationBetweenProductAndOffers(Product product) {
+        return stateStore.detachOffers(product.getId());
     }
 }
\ No newline at end of file
@@ -1,24 +1,25 @@
 package com.ingestionsystem.searchupdater.providers;
 
+import com.ingestionsystem.searchupdater.config.DeltaProperties;
 import com.ingestionsystem.searchupdater.model.Product;
 import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
 import com.ingestionsystem.searchupdater.operation.DeleteOperation;
+import com.ingestionsystem.searchupdater.operation.PartialUpdateOperation;
 import com.ingestionsystem.searchupdater.operation.UpsertOperation;
-import com.ingestionsystem.searchupdater.repository.OfferRepository;
-import com.ingestionsystem.searchupdater.repository.ProductRepository;
 import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import com.ingestionsystem.searchupdater.store.StateStore;
 
 import java.util.List;
 
 public abstract class SearchEngineOperationProvider {
-    protected final ProductRepository productRepository;
-    protected final OfferRepository offerRepository;
+    protected final StateStore stateStore;
+    protected final DeltaProperties deltaProperties;
 
-    public SearchEngineOperationProvider(ProductRepository productRepository, OfferRepository offerRepository,
+    public SearchEngineOperationProvider(StateStore stateStore, DeltaProperties deltaProperties,
                                          IngestionRequest request) {
         validateRequestForProvider(request);
-        this.productRepository = productRepository;
-        this.offerRepository = offerRepository;
+        this.stateStore = stateStore;
+        this.deltaProperties = deltaProperties;
     }
 
     public static BaseSearchEngineOperation getDeleteSearchEngineOperation(Product existingProduct) {
@@ -38,4 +39,28 @@ public abstract class SearchEngineOperationProvider {
     public abstract List<BaseSearchEngineOperation> getSearchOperations(IngestionRequest request);
 
     protected abstract void validateRequestForProvider(IngestionRequest request);
+
+    /**
+     * Operation for offers of an indexed product being added and removed, the product's offers are already saved.
+     * A partial update when the change is small compared to the product's document, the full document otherwise.
+     */
+    protected BaseSearchEngineOperation getOffersChangedOperation(Product product, List<String> addedOfferNames,
+                                                                  List<String> removedOfferNames,
+                                                                  IngestionRequest request) {
+        var offersCount = stateStore.countOffers(product.getId());
+        var previousOffersCount = offersCount - addedOfferNames.size() + removedOfferNames.size();
+        var changes = addedOfferNames.size() + removedOfferNames.size();
+        if (previousOffersCount > 0 && isPartialUpdateAllowed(request, offersCount, changes)) {
+            return new PartialUpdateOperation(product.getId(), null, addedOfferNames, removedOfferNames);
+        }
+        return getUpsertSearchEngineOperation(product, stateStore.getOfferNames(product.getId()));
+    }
+
+    // the document must already exist in the search engine, callers check that
+    protected boolean isPartialUpdateAllowed(IngestionRequest request, int offersCount, int changes) {
+        return deltaProperties.enabled()
+                && !Boolean.TRUE.equals(request.fullDocument())
+                && offersCount >= Math.max(1, deltaProperties.minOffers())
+                && changes <= deltaProperties.maxRatio() * offersCount;
+    }
 }
@@ -1,11 +1,11 @@
 package com.ingestionsystem.searchupdater.providers;
 
+import com.ingestionsystem.searchupdater.config.DeltaProperties;
 import com.ingestionsystem.searchupdater.model.Offer;
 import com.ingestionsystem.searchupdater.model.Product;
 import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
-import com.ingestionsystem.searchupdater.repository.OfferRepository;
-import com.ingestionsystem.searchupdater.repository.ProductRepository;
 import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import com.ingestionsystem.searchupdater.store.StateStore;
 import com.ingestionsystem.searchupdater.validation.FieldValidator;
 
 import java.util.ArrayList;
@@ -13,9 +13,9 @@ import java.util.List;
 
 public class UpsertOfferOperationProvider extends SearchEngineOperationProvider {
 
-    public UpsertOfferOperationProvider(ProductRepository productRepository, OfferRepository offerRepository,
+    public UpsertOfferOperationProvider(StateStore stateStore, DeltaProperties deltaProperties,
                                         IngestionRequest request) {
-        super(productRepository, offerRepository, request);
+        super(stateStore, deltaProperties, request);
     }
 
     @Override
@@ -23,7 +23,16 @@ public class UpsertOfferOperationProvider extends SearchEngineOperationProvider
         var operations = new ArrayList<BaseSearchEngineOperation>();
         var offerId = request.offerId();
         var offerFromRequest = new Offer(offerId, request.offerName());
-        var existingOffer = offerRepository.findById(offerId);
+        var existingOffer = stateStore.findOffer(offerId);
+        // name the offer has in the document of the related product, read before the offer is saved
+        var replacedOfferName = existingOffer
+                .filter(offer -> offer.getProduct() != null
+                        && offer.getProduct().getId().equals(request.relatedProductId()))
+                .map(Offer::getName)
+                .orElse(null);
+        if (existingOffer.isEmpty()) {
+            offerFromRequest.markNew();
+        }
 
         if (existingOffer.isPresent()) {
             if (existingOffer.get().equals(offerFromRequest)) {
@@ -33,7 +42,7 @@ public class UpsertOfferOperationProvider extends SearchEngineOperationProvider
                         return List.of();
                     } else {
                         operations.addAll(
-                                getOperationsForExistingProduct(existingOffer.get().getProduct(), offerFromRequest)
+                                getOperationsForExistingProduct(existingOffer.get().getProduct(), offerFromRequest, request)
                         );
                     }
                 }
@@ -45,46 +54,50 @@ public class UpsertOfferOperationProvider extends SearchEngineOperationProvider
             // but we must set a null association between a new offer and non-existing product
             deleteAssociationBetweenOfferAndProduct(offerFromRequest);
         } else {
-            operations.addAll(getOperationsForNewProduct(offerFromRequest, request.relatedProductId()));
+            operations.addAll(getOperationsForNewProduct(offerFromRequest, replacedOfferName, request));
         }
 
         return operations;
     }
 
     private List<BaseSearchEngineOperation> getOperationsForExistingProduct(
-            Product existingProduct, Offer offerFromRequest) {
+            Product existingProduct, Offer offerFromRequest, IngestionRequest request) {
         if (existingProduct != null && existingProduct.isValid()) {
-            var existingOffers = offerRepository.findByProductId(existingProduct.getId());
+            var existingOffersCount = stateStore.countOffers(existingProduct.getId());
 
-            if (existingOffers.size() == 1) {
+            if (existingOffersCount == 1) {
                 // there is currently 1 offer related to the product
                 // and request wants to delete it therefore, we need to delete a searchable product as well
                 return List.of(SearchEngineOperationProvider.getDeleteSearchEngineOperation(existingProduct));
-            } else if (existingOffers.size() > 1) {
+            } else if (existingOffersCount > 1) {
                 // there are more than 1 offer related to the product
                 // and request wants to delete 1 of them therefore, we need to update a searchable product
                 // with updated list of offers
                 deleteAssociationBetweenOfferAndProduct(offerFromRequest);
-                var offers = offerRepository.findByProductId(existingProduct.getId()).stream().map(Offer::getName).toList();
-                return List.of(SearchEngineOperationProvider.getUpsertSearchEngineOperation(existingProduct, offers));
+                return List.of(getOffersChangedOperation(
+                        existingProduct, List.of(), List.of(offerFromRequest.getName()), request));
             }
         }
         return List.of();
     }
 
-    private List<BaseSearchEngineOperation> getOperationsForNewProduct(Offer offer, String relatedProductId) {
-        var newProductOptional = productRepository.findById(relatedProductId);
+    private List<BaseSearchEngineOperation> getOperationsForNewProduct(Offer offer, String replacedOfferName,
+                                                                       IngestionRequest request) {
+        var relatedProductId = request.relatedProductId();
+        var newProductOptional = stateStore.findProduct(relatedProductId);
         if (newProductOptional.isPresent()) {
             var newProduct = newProductOptional.get();
             associateOfferAndProduct(offer, newProduct);
             if (newProductOptional.get().isValid()) {
-                var offers = offerRepository.findByProductId(newProduct.getId()).stream().map(Offer::getName).toList();
-                return List.of(SearchEngineOperationProvider.getUpsertSearchEngineOperation(newProduct, offers));
+                var removedOfferNames = replacedOfferName != null ? List.of(replacedOfferName) : List.<String>of();
+                return List.of(getOffersChangedOperation(
+                        newProduct, List.of(offer.getName()), removedOfferNames, request));
             }
         } else {
             var product = new Product();
             product.setId(relatedProductId);
-            productRepository.updateOrInsert(product);
+            product.markNew();
+            stateStore.saveProduct(product);
             associateOfferAndProduct(offer, product);
         }
         return List.of();
@@ -96,7 +109,7 @@ public class UpsertOfferOperationProvider extends SearchEngineOperationProvider
 
     private void associateOfferAndProduct(Offer offer, Product product) {
         offer.setProduct(product);
-        offerRepository.updateOrInsert(offer);
+        stateStore.saveOffer(offer);
     }
 
     @Override
@@ -1,11 +1,11 @@
 package com.ingestionsystem.searchupdater.providers;
 
-import com.ingestionsystem.searchupdater.model.Offer;
+import com.ingestionsystem.searchupdater.config.DeltaProperties;
 import com.ingestionsystem.searchupdater.model.Product;
 import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
-import com.ingestionsystem.searchupdater.repository.OfferRepository;
-import com.ingestionsystem.searchupdater.repository.ProductRepository;
+import com.ingestionsystem.searchupdater.operation.PartialUpdateOperation;
 import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import com.ingestionsystem.searchupdater.store.StateStore;
 import com.ingestionsystem.searchupdater.validation.FieldValidator;
 
 import java.util.ArrayList;
@@ -13,18 +13,27 @@ import java.util.List;
 import java.util.Optional;
 
 public class UpsertProductOperationProvider extends SearchEngineOperationProvider {
-    public UpsertProductOperationProvider(ProductRepository productRepository, OfferRepository offerRepository,
+    public UpsertProductOperationProvider(StateStore stateStore, DeltaProperties deltaProperties,
                                           IngestionRequest request) {
-        super(productRepository, offerRepository, request);
+        super(stateStore, deltaProperties, request);
     }
 
     @Override
     public List<BaseSearchEngineOperation> getSearchOperations(IngestionRequest request) {
         var operations = new ArrayList<BaseSearchEngineOperation>();
-        getProductToUpsert(request).ifPresent(product ->{
-            productRepository.updateOrInsert(product);
-            var offers = offerRepository.findByProductId(product.getId()).stream().map(Offer::getName).toList();
-            if (!offers.isEmpty()) {
+        var productOptional = stateStore.findProduct(request.productId());
+        // offers of a product without a name aren't indexed, so only a product named before has a document
+        var indexed = productOptional.map(Product::isValid).orElse(false);
+        getProductToUpsert(request, productOptional).ifPresent(product ->{
+            stateStore.saveProduct(product);
+            var offersCount = stateStore.countOffers(product.getId());
+            if (offersCount == 0) {
+                return;
+            }
+            if (indexed && isPartialUpdateAllowed(request, offersCount, 1)) {
+                operations.add(new PartialUpdateOperation(product.getId(), product.getName(), List.of(), List.of()));
+            } else {
+                var offers = stateStore.getOfferNames(product.getId());
                 operations.add(SearchEngineOperationProvider.getUpsertSearchEngineOperation(product, offers));
             }
         });
@@ -38,9 +47,8 @@ public class UpsertProductOperationProvider extends SearchEngineOperationProvide
         FieldValidator.validateField("productName", request.productName(), operation);
     }
 
-    private Optional<Product> getProductToUpsert(IngestionRequest request) {
+    private Optional<Product> getProductToUpsert(IngestionRequest request, Optional<Product> productOptional) {
         var requestProduct = new Product(request.productId(), request.productName());
-        var productOptional = productRepository.findById(request.productId());
         if (productOptional.isPresent()) {
             var existingProduct = productOptional.get();
             if (requestProduct.equals(existingProduct)) {
@@ -50,6 +58,7 @@ public class UpsertProductOperationProvider extends SearchEngineOperationProvide
                 return Optional.of(existingProduct);
             }
         } else {
+            requestProduct.markNew();
             return Optional.of(requestProduct);
         }
     }
@@ -0,0 +1,10 @@
+package com.ingestionsystem.searchupdater.repository;
+
+/**
+ * Projection of an offer name together with its named product, the content of a searchable product document.
+ */
+public record DocumentEntry(
+    String productId,
+    String productName,
+    String offerName)
+{}
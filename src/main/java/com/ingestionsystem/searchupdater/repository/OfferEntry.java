@@ -0,0 +1,10 @@
+package com.ingestionsystem.searchupdater.repository;
+
+/**
+ * Projection of an offer with the id of its product, read without loading entities.
+ */
+public record OfferEntry(
+    String id,
+    String name,
+    String productId)
+{}
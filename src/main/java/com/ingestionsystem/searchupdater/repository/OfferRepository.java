@@ -3,9 +3,14 @@ package com.ingestionsystem.searchupdater.repository;
 import com.ingestionsystem.searchupdater.model.Offer;
 import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface OfferRepository extends JpaRepository<Offer, String> {
@@ -14,5 +19,27 @@ public interface OfferRepository extends JpaRepository<Offer, String> {
         save(offer);
     }
 
-    List<Offer> findByProductId(String productId);
+    @Query("select new com.ingestionsystem.searchupdater.repository.OfferEntry(o.id, o.name, o.product.id) "
+            + "from Offer o where o.product.id = :productId")
+    List<OfferEntry> findEntriesByProductId(@Param("productId") String productId);
+
+    @Query("select new com.ingestionsystem.searchupdater.repository.OfferEntry(o.id, o.name, o.product.id) "
+            + "from Offer o where o.product is not null")
+    Stream<OfferEntry> streamAllLinkedEntries();
+
+    // offers of named products, grouped by product, so documents can be assembled one by one
+    @Query("select new com.ingestionsystem.searchupdater.repository.DocumentEntry(p.id, p.name, o.name) "
+            + "from Offer o join o.product p where p.name is not null order by p.id")
+    Stream<DocumentEntry> streamAllDocumentEntries();
+
+    @Query("select new com.ingestionsystem.searchupdater.repository.OfferEntry(o.id, o.name, o.product.id) "
+            + "from Offer o where o.id in :offerIds and o.product is not null")
+    List<OfferEntry> findLinkedEntriesByIdIn(@Param("offerIds") Collection<String> offerIds);
+
+    // single bulk update instead of loading and dirty-checking every offer,
+    // callers evict the offers of the product they hold, which keep a stale product
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update Offer o set o.product = null where o.product.id = :productId")
+    int detachFromProduct(@Param("productId") String productId);
 }
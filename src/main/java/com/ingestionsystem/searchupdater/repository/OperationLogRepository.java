@@ -0,0 +1,26 @@
+package com.ingestionsystem.searchupdater.repository;
+
+import com.ingestionsystem.searchupdater.model.OperationLogEntry;
+import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface OperationLogRepository extends JpaRepository<OperationLogEntry, Long> {
+    List<OperationLogEntry> findBySequenceBetweenOrderBySequence(long from, long to, Limit limit);
+
+    @Query("select max(e.sequence) from OperationLogEntry e")
+    Long findMaxSequence();
+
+    @Transactional
+    @Modifying
+    @Query("delete from OperationLogEntry e where e.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") Instant cutoff);
+}
@@ -3,12 +3,18 @@ package com.ingestionsystem.searchupdater.repository;
 import com.ingestionsystem.searchupdater.model.Product;
 import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.stream.Stream;
+
 @Repository
 public interface ProductRepository extends JpaRepository<Product, String> {
     @Transactional
     default void updateOrInsert(Product product) {
         save(product);
     }
+
+    @Query("select p.id from Product p")
+    Stream<String> streamAllIds();
 }
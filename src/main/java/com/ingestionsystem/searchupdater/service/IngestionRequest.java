@@ -8,5 +8,12 @@ public record IngestionRequest(
     String offerName,
     String productId,
     String relatedProductId,
-    String productName)
-{}
+    String productName,
+    // asks for the full document instead of a partial update
+    Boolean fullDocument)
+{
+    public IngestionRequest(RequestOperationType operation, String offerId, String offerName, String productId,
+                            String relatedProductId, String productName) {
+        this(operation, offerId, offerName, productId, relatedProductId, productName, null);
+    }
+}
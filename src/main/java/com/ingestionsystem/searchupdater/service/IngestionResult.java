@@ -0,0 +1,21 @@
+package com.ingestionsystem.searchupdater.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record IngestionResult(
+    int index,
+    List<BaseSearchEngineOperation> operations,
+    String error)
+{
+    public static IngestionResult success(int index, List<BaseSearchEngineOperation> operations) {
+        return new IngestionResult(index, operations, null);
+    }
+
+    public static IngestionResult failure(int index, String error) {
+        return new IngestionResult(index, null, error);
+    }
+}
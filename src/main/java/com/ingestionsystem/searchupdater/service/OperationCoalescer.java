@@ -0,0 +1,115 @@
+package com.ingestionsystem.searchupdater.service;
+
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+import com.ingestionsystem.searchupdater.operation.PartialUpdateOperation;
+import com.ingestionsystem.searchupdater.operation.UpsertOperation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collapses operations of a group of requests to the final state per product.
+ * An upsert or a delete carries the complete searchable product state, so it supersedes earlier operations
+ * of the product. A partial update is applied to an earlier upsert or merged with an earlier partial update,
+ * only after a delete it's kept, because it can't be applied to a missing document.
+ * Operations of a product are emitted where its last operation was.
+ */
+public class OperationCoalescer {
+
+    public static List<BaseSearchEngineOperation> coalesce(List<BaseSearchEngineOperation> operations) {
+        return coalesceResults(List.of(IngestionResult.success(0, operations))).getFirst().operations();
+    }
+
+    /**
+     * Removes superseded operations from results of a group while keeping one result per request,
+     * so indexes and errors of all requests are still reported.
+     */
+    public static List<IngestionResult> coalesceResults(List<IngestionResult> results) {
+        var folded = new HashMap<String, FoldedProduct>();
+        var position = 0;
+        for (int i = 0; i < results.size(); i++) {
+            var operations = results.get(i).operations();
+            if (operations == null) {
+                continue;
+            }
+            for (var operation : operations) {
+                var previous = folded.get(operation.getProductId());
+                var foldedOperations = previous != null ? fold(previous.operations(), operation) : List.of(operation);
+                folded.put(operation.getProductId(), new FoldedProduct(foldedOperations, i, position++));
+            }
+        }
+        var operationsByResult = new HashMap<Integer, List<FoldedProduct>>();
+        for (var product : folded.values()) {
+            operationsByResult.computeIfAbsent(product.result(), result -> new ArrayList<>()).add(product);
+        }
+        var coalesced = new ArrayList<IngestionResult>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            var result = results.get(i);
+            if (result.operations() == null || result.operations().isEmpty()) {
+                coalesced.add(result);
+                continue;
+            }
+            var operations = new ArrayList<BaseSearchEngineOperation>();
+            operationsByResult.getOrDefault(i, List.of()).stream()
+                    .sorted((a, b) -> Integer.compare(a.position(), b.position()))
+                    .forEach(product -> operations.addAll(product.operations()));
+            coalesced.add(IngestionResult.success(result.index(), operations));
+        }
+        return coalesced;
+    }
+
+    // operations of a product folded so far, with the result and the position of its last operation
+    private record FoldedProduct(List<BaseSearchEngineOperation> operations, int result, int position) {}
+
+    private static List<BaseSearchEngineOperation> fold(List<BaseSearchEngineOperation> folded,
+                                                        BaseSearchEngineOperation next) {
+        if (!(next instanceof PartialUpdateOperation partial)) {
+            return List.of(next);
+        }
+        var last = folded.getLast();
+        var kept = folded.subList(0, folded.size() - 1);
+        BaseSearchEngineOperation merged;
+        if (last instanceof UpsertOperation upsert) {
+            merged = apply(upsert, partial);
+        } else if (last instanceof PartialUpdateOperation previous) {
+            merged = merge(previous, partial);
+        } else {
+            // a deleted document can't be updated, so both are kept
+            var operations = new ArrayList<>(folded);
+            operations.add(partial);
+            return operations;
+        }
+        var operations = new ArrayList<>(kept);
+        operations.add(merged);
+        return operations;
+    }
+
+    private static UpsertOperation apply(UpsertOperation upsert, PartialUpdateOperation partial) {
+        var offerNames = new ArrayList<>(upsert.getOfferNames());
+        partial.getRemovedOfferNames().forEach(offerNames::remove);
+        offerNames.addAll(partial.getAddedOfferNames());
+        var productName = partial.getProductName() != null ? partial.getProductName() : upsert.getProductName();
+        return new UpsertOperation(upsert.getProductId(), productName, offerNames);
+    }
+
+    private static PartialUpdateOperation merge(PartialUpdateOperation previous, PartialUpdateOperation next) {
+        // net count of every name added (positive) or removed (negative), additions and removals cancel out
+        var changes = new LinkedHashMap<String, Integer>();
+        previous.getAddedOfferNames().forEach(name -> changes.merge(name, 1, Integer::sum));
+        previous.getRemovedOfferNames().forEach(name -> changes.merge(name, -1, Integer::sum));
+        next.getRemovedOfferNames().forEach(name -> changes.merge(name, -1, Integer::sum));
+        next.getAddedOfferNames().forEach(name -> changes.merge(name, 1, Integer::sum));
+        var added = new ArrayList<String>();
+        var removed = new ArrayList<String>();
+        for (Map.Entry<String, Integer> change : changes.entrySet()) {
+            for (int i = 0; i < Math.abs(change.getValue()); i++) {
+                (change.getValue() > 0 ? added : removed).add(change.getKey());
+            }
+        }
+        var productName = next.getProductName() != null ? next.getProductName() : previous.getProductName();
+        return new PartialUpdateOperation(previous.getProductId(), productName, added, removed);
+    }
+}
@@ -2,8 +2,19 @@ package com.ingestionsystem.searchupdater.service;
 
 import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UpdaterService {
     List<BaseSearchEngineOperation> getBaseSearchEngineOperations(IngestionRequest request);
+
+    List<IngestionResult> getBatchSearchEngineOperations(List<IngestionRequest> requests);
+
+    /**
+     * Checks the fields required by the operation of the request without processing it.
+     */
+    void validateRequest(IngestionRequest request);
+
+    void processRequests(Iterator<IngestionRequest> requests, Consumer<IngestionResult> resultConsumer);
 }
@@ -1,57 +1,385 @@
 package com.ingestionsystem.searchupdater.service;
 
+import com.ingestionsystem.searchupdater.config.BatchProperties;
+import com.ingestionsystem.searchupdater.config.DeltaProperties;
+import com.ingestionsystem.searchupdater.hotkey.HotProducts;
+import com.ingestionsystem.searchupdater.index.DocumentFingerprints;
+import com.ingestionsystem.searchupdater.lane.ExecutionLanes;
+import com.ingestionsystem.searchupdater.lock.ProductLocks;
+import com.ingestionsystem.searchupdater.metrics.IngestionMetrics;
+import com.ingestionsystem.searchupdater.model.Offer;
 import com.ingestionsystem.searchupdater.operation.*;
+import com.ingestionsystem.searchupdater.oplog.OperationLog;
 import com.ingestionsystem.searchupdater.providers.*;
-import com.ingestionsystem.searchupdater.repository.OfferRepository;
-import com.ingestionsystem.searchupdater.repository.ProductRepository;
-import jakarta.transaction.Transactional;
+import com.ingestionsystem.searchupdater.sink.BulkOperationPublisher;
+import com.ingestionsystem.searchupdater.sink.ProductDebouncer;
+import com.ingestionsystem.searchupdater.store.StateStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 @Service
 public class UpdaterServiceImpl implements UpdaterService {
 
     private final static Logger logger = LoggerFactory.getLogger(UpdaterServiceImpl.class);
-    private final ProductRepository productRepository;
-    private final OfferRepository offerRepository;
+    private final StateStore stateStore;
+    private final TransactionTemplate transactionTemplate;
+    private final BatchProperties batchProperties;
+    private final ProductLocks productLocks;
+    private final DeltaProperties deltaProperties;
+    private final IngestionMetrics metrics;
+    // null unless searchupdater.lanes.enabled is set
+    private final ExecutionLanes lanes;
+    // null unless a search engine sink is configured with searchupdater.sink.type
+    private final BulkOperationPublisher operationPublisher;
+    // null unless searchupdater.debounce.enabled is set for a configured sink
+    private final ProductDebouncer debouncer;
+    // null unless searchupdater.operation-log.enabled is set
+    private final OperationLog operationLog;
+    // null unless searchupdater.fingerprints.enabled is set
+    private final DocumentFingerprints fingerprints;
+    // null unless searchupdater.hot-products.enabled is set
+    private final HotProducts hotProducts;
+
+    private record IndexedRequest(int index, IngestionRequest request) {}
 
     @Autowired
-    public UpdaterServiceImpl(ProductRepository productRepository, OfferRepository offerRepository) {
-        this.productRepository = productRepository;
-        this.offerRepository = offerRepository;
+    public UpdaterServiceImpl(StateStore stateStore, PlatformTransactionManager transactionManager,
+                              BatchProperties batchProperties, ProductLocks productLocks,
+                              DeltaProperties deltaProperties, IngestionMetrics metrics, @Nullable ExecutionLanes lanes,
+                              @Nullable BulkOperationPublisher operationPublisher,
+                              @Nullable ProductDebouncer debouncer, @Nullable OperationLog operationLog,
+                              @Nullable DocumentFingerprints fingerprints, @Nullable HotProducts hotProducts) {
+        this.stateStore = stateStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchProperties = batchProperties;
+        this.productLocks = productLocks;
+        this.deltaProperties = deltaProperties;
+        this.metrics = metrics;
+        this.lanes = lanes;
+        this.operationPublisher = operationPublisher;
+        this.debouncer = debouncer;
+        this.operationLog = operationLog;
+        this.fingerprints = fingerprints;
+        this.hotProducts = hotProducts;
     }
 
-    @Transactional
     @Override
     public List<BaseSearchEngineOperation> getBaseSearchEngineOperations(IngestionRequest request) {
+        recordRequest(request);
+        List<BaseSearchEngineOperation> operations;
+        if (lanes == null) {
+            operations = processRequest(request);
+        } else {
+            var lane = lanes.laneOf(resolveOwners(Collections.singletonList(request)).getFirst());
+            operations = await(lanes.submit(lane, 1, () -> processRequest(request)));
+        }
+        publish(operations);
+        return operations;
+    }
+
+    @Override
+    public List<IngestionResult> getBatchSearchEngineOperations(List<IngestionRequest> requests) {
+        if (requests == null) {
+            throw new IllegalArgumentException("Request body can't be null");
+        }
+        var results = new ArrayList<IngestionResult>(requests.size());
+        processRequests(requests.iterator(), results::add);
+        return batchProperties.coalesce() ? OperationCoalescer.coalesceResults(results) : results;
+    }
+
+    @Override
+    public void processRequests(Iterator<IngestionRequest> requests, Consumer<IngestionResult> resultConsumer) {
+        var chunkSize = Math.max(1, batchProperties.chunkSize());
+        var index = 0;
+        while (requests.hasNext()) {
+            var chunk = new ArrayList<IndexedRequest>(chunkSize);
+            while (requests.hasNext() && chunk.size() < chunkSize) {
+                var request = requests.next();
+                recordRequest(request);
+                chunk.add(new IndexedRequest(index++, request));
+            }
+            // results are handed over only after the chunk is committed,
+            // so a consumer never sees operations of a rolled back chunk
+            if (lanes == null) {
+                emit(transactionTemplate.execute(status -> processChunk(chunk)), resultConsumer);
+            } else {
+                processChunkInLanes(chunk, resultConsumer);
+            }
+        }
+    }
+
+    @Override
+    public void validateRequest(IngestionRequest request) {
+        validate(request);
+        // providers check fields required by their operation when created
+        getProvider(request);
+    }
+
+    private List<BaseSearchEngineOperation> processRequest(IngestionRequest request) {
+        return transactionTemplate.execute(status -> {
+            metrics.measureTransaction();
+            stateStore.bufferWrites();
+            lockAffectedProducts(Collections.singletonList(request));
+            var operations = suppressUnchanged(getOperations(request));
+            appendToLog(operations);
+            return operations;
+        });
+    }
+
+    private List<IngestionResult> processChunk(List<IndexedRequest> chunk) {
+        metrics.measureTransaction();
+        stateStore.bufferWrites();
+        lockAffectedProducts(chunk.stream().map(IndexedRequest::request).toList());
+        List<IngestionResult> results = new ArrayList<>(chunk.size());
+        for (var indexed : chunk) {
+            try {
+                results.add(IngestionResult.success(indexed.index(), getOperations(indexed.request())));
+            } catch (IllegalArgumentException e) {
+                logger.debug("Rejected request " + indexed.index() + " of batch: " + e.getMessage());
+                results.add(IngestionResult.failure(indexed.index(), e.getMessage()));
+            }
+        }
+        if (batchProperties.coalesce()) {
+            results = OperationCoalescer.coalesceResults(results);
+        }
+        if (fingerprints != null) {
+            results = results.stream()
+                    .map(result -> result.operations() != null
+                            ? IngestionResult.success(result.index(), fingerprints.filter(result.operations()))
+                            : result)
+                    .toList();
+        }
+        appendToLog(results.stream()
+                .filter(result -> result.operations() != null)
+                .flatMap(result -> result.operations().stream())
+                .toList());
+        stateStore.flushAndClear();
+        return results;
+    }
+
+    private List<BaseSearchEngineOperation> suppressUnchanged(List<BaseSearchEngineOperation> operations) {
+        return fingerprints != null ? fingerprints.filter(operations) : operations;
+    }
+
+    private void appendToLog(List<BaseSearchEngineOperation> operations) {
+        if (operationLog != null && operations != null) {
+            operationLog.append(operations);
+        }
+    }
+
+    // requests of the chunk are split by lane keeping their order, every lane processes its part in a transaction
+    private void processChunkInLanes(List<IndexedRequest> chunk, Consumer<IngestionResult> resultConsumer) {
+        var owners = resolveOwners(chunk.stream().map(IndexedRequest::request).toList());
+        var parts = new TreeMap<Integer, List<IndexedRequest>>();
+        for (int i = 0; i < chunk.size(); i++) {
+            parts.computeIfAbsent(lanes.laneOf(owners.get(i)), lane -> new ArrayList<>()).add(chunk.get(i));
+        }
+        var pending = new ArrayList<CompletableFuture<List<IngestionResult>>>(parts.size());
+        parts.forEach((lane, part) -> pending.add(lanes.submit(lane, part.size(),
+                () -> transactionTemplate.execute(status -> processChunk(part)))));
+        var results = new ArrayList<IngestionResult>(chunk.size());
+        RuntimeException failure = null;
+        for (var part : pending) {
+            try {
+                results.addAll(await(part));
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        // parts committed by other lanes are still handed over before the failure is rethrown
+        results.sort(Comparator.comparingInt(IngestionResult::index));
+        emit(results, resultConsumer);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void emit(List<IngestionResult> results, Consumer<IngestionResult> resultConsumer) {
+        if (results != null) {
+            for (var result : results) {
+                publish(result.operations());
+                resultConsumer.accept(result);
+            }
+        }
+    }
+
+    // operations are published only once committed, blocking while the sink has too many pending
+    private void publish(List<BaseSearchEngineOperation> operations) {
+        if (operations == null || operations.isEmpty()) {
+            return;
+        }
+        metrics.recordEmitted(operations);
+        if (hotProducts != null) {
+            hotProducts.recordOperations(operations);
+        }
+        if (debouncer != null) {
+            debouncer.hold(operations);
+        } else if (operationPublisher != null) {
+            operationPublisher.publish(operations);
+        }
+    }
+
+    private void recordRequest(IngestionRequest request) {
+        if (hotProducts != null) {
+            hotProducts.recordRequest(request);
+        }
+    }
+
+    // id of the product each request belongs to, which decides its lane: the product itself for product requests,
+    // for offers the related product of the request or else the stored one, or the offer id when there's none.
+    // An offer without a related product in the request stays in the lane of its previous request of the chunk.
+    private List<String> resolveOwners(List<IngestionRequest> requests) {
+        var offerIds = new HashSet<String>();
+        for (var request : requests) {
+            if (request != null && request.offerId() != null && request.operation() != null
+                    && (request.operation() == RequestOperationType.UPSERT_OFFER
+                    || request.operation() == RequestOperationType.DELETE_OFFER)) {
+                offerIds.add(request.offerId());
+            }
+        }
+        var offerOwners = new HashMap<>(stateStore.findOfferProductIds(offerIds));
+        var owners = new ArrayList<String>(requests.size());
+        for (var request : requests) {
+            if (request == null || request.operation() == null) {
+                owners.add(null);
+                continue;
+            }
+            switch (request.operation()) {
+                case UPSERT_OFFER, DELETE_OFFER -> {
+                    var owner = request.operation() == RequestOperationType.UPSERT_OFFER
+                            && request.relatedProductId() != null
+                            ? request.relatedProductId()
+                            : offerOwners.getOrDefault(request.offerId(), request.offerId());
+                    if (request.offerId() != null) {
+                        offerOwners.put(request.offerId(), owner);
+                    }
+                    owners.add(owner);
+                }
+                default -> owners.add(request.productId());
+            }
+        }
+        return owners;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // locks, until the transaction completes, all products whose offers the requests read or change,
+    // including products which offers are moved away from
+    private void lockAffectedProducts(List<IngestionRequest> requests) {
+        var productIds = new HashSet<String>();
+        var offerIds = new HashSet<String>();
+        for (var request : requests) {
+            if (request == null || request.operation() == null) {
+                continue;
+            }
+            switch (request.operation()) {
+                case UPSERT_OFFER -> {
+                    addIfPresent(productIds, request.relatedProductId());
+                    addIfPresent(offerIds, request.offerId());
+                }
+                case DELETE_OFFER -> addIfPresent(offerIds, request.offerId());
+                case UPSERT_PRODUCT, DELETE_PRODUCT -> addIfPresent(productIds, request.productId());
+            }
+        }
+        var linkedProductIds = stateStore.findOfferProductIds(offerIds);
+        while (true) {
+            var lockedProductIds = new HashSet<>(productIds);
+            lockedProductIds.addAll(linkedProductIds.values());
+            var lease = productLocks.lock(lockedProductIds);
+            // an offer could be moved to another product before the locks were acquired. It's checked on the offer
+            // loaded now, which providers read again from the persistence context, instead of another query
+            var currentProductIds = loadOfferProductIds(offerIds);
+            if (lockedProductIds.containsAll(currentProductIds.values())) {
+                return;
+            }
+            lease.release();
+            productLocks.recordRetry();
+            // the offers can change again until their products are locked, they are loaded anew
+            stateStore.flushAndClear();
+            linkedProductIds = currentProductIds;
+        }
+    }
+
+    private Map<String, String> loadOfferProductIds(Set<String> offerIds) {
+        var productIds = new HashMap<String, String>();
+        for (var offerId : offerIds) {
+            stateStore.findOffer(offerId).map(Offer::getProduct)
+                    .ifPresent(product -> productIds.put(offerId, product.getId()));
+        }
+        return productIds;
+    }
+
+    private static void addIfPresent(Set<String> ids, String id) {
+        if (id != null) {
+            ids.add(id);
+        }
+    }
+
+    private List<BaseSearchEngineOperation> getOperations(IngestionRequest request) {
+        var sample = metrics.startRequest();
+        SearchEngineOperationProvider provider = null;
+        try {
+            validate(request);
+            provider = getProvider(request);
+            var operations = provider.getSearchOperations(request);
+            metrics.recordRequest(sample, request, provider, "success");
+            return operations;
+        } catch (RuntimeException e) {
+            metrics.recordRequest(sample, request, provider, e instanceof IllegalArgumentException ? "rejected" : "failed");
+            throw e;
+        }
+    }
+
+    private static void validate(IngestionRequest request) {
         if (request == null) {
             throw new IllegalArgumentException("Request body can't be null");
         }
-        var provider = getProvider(request);
-        return provider.getSearchOperations(request);
+        if (request.operation() == null) {
+            throw new IllegalArgumentException("Field: operation must not be null");
+        }
     }
 
     private SearchEngineOperationProvider getProvider(IngestionRequest request) {
         switch (request.operation()) {
             case DELETE_OFFER -> {
                 logger.debug("DELETE OFFER operation for request: " + request);
-                return new DeleteOfferOperationProvider(productRepository, offerRepository, request);
+                return new DeleteOfferOperationProvider(stateStore, deltaProperties, request);
             }
             case UPSERT_OFFER -> {
                 logger.debug("UPSERT OFFER operation for request: " + request);
-                return new UpsertOfferOperationProvider(productRepository, offerRepository, request);
+                return new UpsertOfferOperationProvider(stateStore, deltaProperties, request);
             }
             case DELETE_PRODUCT -> {
                 logger.debug("DELETE PRODUCT operation for request: " + request);
-                return new DeleteProductOperationProvider(productRepository, offerRepository, request);
+                return new DeleteProductOperationProvider(stateStore, deltaProperties, request);
             }
             case UPSERT_PRODUCT -> {
                 logger.debug("UPSERT PRODUCT operation for request: " + request);
-                return new UpsertProductOperationProvider(productRepository, offerRepository, request);
+                return new UpsertProductOperationProvider(stateStore, deltaProperties, request);
             }
             default -> throw new IllegalArgumentException("Incorrect operation: " + request.operation());
         }
@@ -0,0 +1,199 @@
+package com.ingestionsystem.searchupdater.sink;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ingestionsystem.searchupdater.config.SinkProperties;
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers emitted operations to the search engine sink in bulk requests.
+ * Operations are queued and collected by a single sender into requests bounded by count, bytes and time.
+ * The queue is bounded, so when the sink is slow or failing, emitting operations blocks request processing
+ * instead of growing memory. Failed requests are retried with exponential backoff and full jitter,
+ * requests given up on and operations still pending when stopping are appended to the dead letter file.
+ */
+@Component
+@ConditionalOnExpression("'${searchupdater.sink.type:none}' != 'none'")
+public class BulkOperationPublisher {
+
+    private final static Logger logger = LoggerFactory.getLogger(BulkOperationPublisher.class);
+    private final SearchEngineSink sink;
+    private final SinkProperties sinkProperties;
+    private final BulkSerializer serializer;
+    private final BlockingQueue<BaseSearchEngineOperation> pending;
+    private final Timer backpressure;
+    private final Timer sendTimer;
+    private final Counter sentOperations;
+    private final Counter retries;
+    private final Counter droppedOperations;
+    private volatile boolean running;
+    private Thread sender;
+
+    @Autowired
+    public BulkOperationPublisher(SearchEngineSink sink, SinkProperties sinkProperties, ObjectMapper objectMapper,
+                                  MeterRegistry meterRegistry) {
+        this.sink = sink;
+        this.sinkProperties = sinkProperties;
+        this.serializer = new BulkSerializer(objectMapper.getFactory(), sinkProperties.index());
+        this.pending = new ArrayBlockingQueue<>(Math.max(1, sinkProperties.maxPending()));
+        this.backpressure = meterRegistry.timer("searchupdater.sink.backpressure");
+        this.sendTimer = meterRegistry.timer("searchupdater.sink.send");
+        this.sentOperations = meterRegistry.counter("searchupdater.sink.operations");
+        this.retries = meterRegistry.counter("searchupdater.sink.retries");
+        this.droppedOperations = meterRegistry.counter("searchupdater.sink.dropped");
+        Gauge.builder("searchupdater.sink.pending", pending, Collection::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        sender = new Thread(this::sendPending, "bulk-sender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Sends operations still pending and stops the sender.
+     * Operations not delivered within the shutdown timeout are dead lettered.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (sender != null) {
+            sender.join(sinkProperties.shutdownTimeout().toMillis());
+            if (sender.isAlive()) {
+                // the sender dead letters the request it's sending, the rest is left in the queue
+                sender.interrupt();
+                sender.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        }
+        var undelivered = new ArrayList<BaseSearchEngineOperation>(pending.size());
+        pending.drainTo(undelivered);
+        if (!undelivered.isEmpty()) {
+            var body = new ByteArrayOutputStream();
+            undelivered.forEach(operation -> body.writeBytes(serializer.serialize(operation)));
+            deadLetter(undelivered.size(), body.toByteArray(), "Stopped before delivering", null);
+        }
+    }
+
+    /**
+     * Queues operations for delivery, waiting while the queue is full.
+     */
+    public void publish(List<BaseSearchEngineOperation> operations) {
+        for (var operation : operations) {
+            if (!pending.offer(operation)) {
+                var waitStart = System.nanoTime();
+                try {
+                    pending.put(operation);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the search engine sink", e);
+                } finally {
+                    backpressure.record(System.nanoTime() - waitStart, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+
+    private void sendPending() {
+        var batchSize = Math.max(1, sinkProperties.batchSize());
+        var batchBytes = sinkProperties.batchBytes().toBytes();
+        var flushIntervalNanos = sinkProperties.flushInterval().toNanos();
+        var operations = new ArrayList<BaseSearchEngineOperation>(batchSize);
+        var body = new ByteArrayOutputStream();
+        try {
+            while (running || !pending.isEmpty()) {
+                var first = pending.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                // collect until the request is full or the flush interval since its first operation passes
+                var deadline = System.nanoTime() + flushIntervalNanos;
+                var operation = first;
+                while (operation != null) {
+                    operations.add(operation);
+                    body.writeBytes(serializer.serialize(operation));
+                    if (operations.size() >= batchSize || body.size() >= batchBytes) {
+                        break;
+                    }
+                    operation = running
+                            ? pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                            : pending.poll();
+                }
+                send(new BulkRequest(List.copyOf(operations), body.toByteArray()));
+                operations.clear();
+                body.reset();
+            }
+        } catch (InterruptedException e) {
+            if (!operations.isEmpty()) {
+                deadLetter(operations.size(), body.toByteArray(), "Stopped before delivering", null);
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void send(BulkRequest request) throws InterruptedException {
+        var backoff = sinkProperties.initialBackoff().toMillis();
+        for (var attempt = 1; ; attempt++) {
+            var start = System.nanoTime();
+            try {
+                sink.send(request);
+                sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                sentOperations.increment(request.operations().size());
+                return;
+            } catch (Exception e) {
+                sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (sinkProperties.maxAttempts() > 0 && attempt >= sinkProperties.maxAttempts()) {
+                    deadLetter(request.operations().size(), request.body(),
+                            "Gave up after " + attempt + " attempts on", e);
+                    return;
+                }
+                logger.warn("Sending bulk request failed on attempt " + attempt + ": " + e.getMessage());
+                retries.increment();
+                // full jitter, so senders failing together don't retry together
+                Thread.sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+                backoff = Math.min(backoff * 2, sinkProperties.maxBackoff().toMillis());
+            }
+        }
+    }
+
+    /**
+     * Appends operations that won't be delivered to the dead letter file, logging them if that fails too.
+     */
+    private synchronized void deadLetter(int count, byte[] body, String reason, Exception cause) {
+        droppedOperations.increment(count);
+        var path = sinkProperties.deadLetterPath();
+        try {
+            Files.write(path, body, StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                    StandardOpenOption.WRITE, StandardOpenOption.DSYNC);
+            logger.error(reason + " " + count + " operations, appended them to " + path, cause);
+        } catch (IOException e) {
+            e.addSuppressed(cause == null ? new IllegalStateException(reason) : cause);
+            logger.error(reason + " " + count + " operations and couldn't append them to " + path + ":\n"
+                    + new String(body, StandardCharsets.UTF_8), e);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.ingestionsystem.searchupdater.sink;
+
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+
+import java.util.List;
+
+/**
+ * Operations of one bulk request together with their serialized NDJSON body.
+ */
+public record BulkRequest(List<BaseSearchEngineOperation> operations, byte[] body) {}
@@ -0,0 +1,93 @@
+package com.ingestionsystem.searchupdater.sink;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+import com.ingestionsystem.searchupdater.operation.PartialUpdateOperation;
+import com.ingestionsystem.searchupdater.operation.UpsertOperation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Writes operations in the bulk API format: an action line per operation, followed by the document line for upserts
+ * and the script line for partial updates. The script removes one occurrence of every removed offer name.
+ * <pre>
+ * {"index":{"_index":"products","_id":"productA"}}
+ * {"productId":"productA","productName":"name","offerNames":["offer"]}
+ * {"update":{"_index":"products","_id":"productC"}}
+ * {"script":{"source":"...","lang":"painless","params":{"productName":null,"added":["offer"],"removed":[]}}}
+ * {"delete":{"_index":"products","_id":"productB"}}
+ * </pre>
+ */
+public class BulkSerializer {
+    private static final String PARTIAL_UPDATE_SCRIPT = "if (params.productName != null) "
+            + "{ ctx._source.productName = params.productName } "
+            + "for (name in params.removed) { int i = ctx._source.offerNames.indexOf(name); "
+            + "if (i >= 0) { ctx._source.offerNames.remove(i) } } "
+            + "ctx._source.offerNames.addAll(params.added)";
+    private final JsonFactory jsonFactory;
+    private final String index;
+
+    public BulkSerializer(JsonFactory jsonFactory, String index) {
+        this.jsonFactory = jsonFactory;
+        this.index = index;
+    }
+
+    public byte[] serialize(BaseSearchEngineOperation operation) {
+        var out = new ByteArrayOutputStream(128);
+        try (var generator = jsonFactory.createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            if (operation instanceof UpsertOperation upsert) {
+                writeAction(generator, "index", upsert.getProductId());
+                generator.writeStartObject();
+                generator.writeStringField("productId", upsert.getProductId());
+                generator.writeStringField("productName", upsert.getProductName());
+                writeArray(generator, "offerNames", upsert.getOfferNames());
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            } else if (operation instanceof PartialUpdateOperation partial) {
+                writeAction(generator, "update", partial.getProductId());
+                generator.writeStartObject();
+                generator.writeObjectFieldStart("script");
+                generator.writeStringField("source", PARTIAL_UPDATE_SCRIPT);
+                generator.writeStringField("lang", "painless");
+                generator.writeObjectFieldStart("params");
+                generator.writeStringField("productName", partial.getProductName());
+                writeArray(generator, "added", partial.getAddedOfferNames());
+                writeArray(generator, "removed", partial.getRemovedOfferNames());
+                generator.writeEndObject();
+                generator.writeEndObject();
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            } else {
+                writeAction(generator, "delete", operation.getProductId());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeArray(JsonGenerator generator, String field, List<String> values) throws IOException {
+        generator.writeArrayFieldStart(field);
+        if (values != null) {
+            for (var value : values) {
+                generator.writeString(value);
+            }
+        }
+        generator.writeEndArray();
+    }
+
+    private void writeAction(JsonGenerator generator, String action, String id) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart(action);
+        generator.writeStringField("_index", index);
+        generator.writeStringField("_id", id);
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+}
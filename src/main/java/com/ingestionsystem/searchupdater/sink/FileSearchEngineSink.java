@@ -0,0 +1,31 @@
+package com.ingestionsystem.searchupdater.sink;
+
+import com.ingestionsystem.searchupdater.config.SinkProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends bulk requests to a file, for replaying them into a search engine later or inspecting them locally.
+ */
+@Component
+@ConditionalOnProperty(prefix = "searchupdater.sink", name = "type", havingValue = "file")
+public class FileSearchEngineSink implements SearchEngineSink {
+    private final Path path;
+
+    @Autowired
+    public FileSearchEngineSink(SinkProperties sinkProperties) {
+        this.path = sinkProperties.filePath();
+    }
+
+    @Override
+    public void send(BulkRequest request) throws IOException {
+        Files.write(path, request.body(), StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                StandardOpenOption.WRITE, StandardOpenOption.DSYNC);
+    }
+}
@@ -0,0 +1,29 @@
+package com.ingestionsystem.searchupdater.sink;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps received bulk requests in memory, for local testing.
+ */
+@Component
+@ConditionalOnProperty(prefix = "searchupdater.sink", name = "type", havingValue = "in-memory")
+public class InMemorySearchEngineSink implements SearchEngineSink {
+    private final List<BulkRequest> requests = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void send(BulkRequest request) {
+        requests.add(request);
+    }
+
+    public List<BulkRequest> getRequests() {
+        return List.copyOf(requests);
+    }
+
+    public void clear() {
+        requests.clear();
+    }
+}
@@ -0,0 +1,160 @@
+package com.ingestionsystem.searchupdater.sink;
+
+import com.ingestionsystem.searchupdater.config.DebounceProperties;
+import com.ingestionsystem.searchupdater.lock.ProductLocks;
+import com.ingestionsystem.searchupdater.model.Product;
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+import com.ingestionsystem.searchupdater.operation.DeleteOperation;
+import com.ingestionsystem.searchupdater.operation.UpsertOperation;
+import com.ingestionsystem.searchupdater.store.StateStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds operations for the search engine sink per product until the product stops changing for the debounce window,
+ * or until the max delay since its first held change passes. Then one operation is delivered, computed from
+ * the state of the product at that moment: an upsert for a named product with offers, a delete otherwise.
+ * The state is read under the product's lock, so changes of transactions still in progress aren't delivered.
+ * Settled products are delivered in small groups, each locked only while its products are read in one query.
+ */
+@Component
+@ConditionalOnExpression("${searchupdater.debounce.enabled:false} and '${searchupdater.sink.type:none}' != 'none'")
+public class ProductDebouncer {
+
+    private final static Logger logger = LoggerFactory.getLogger(ProductDebouncer.class);
+    private final StateStore stateStore;
+    private final ProductLocks productLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final BulkOperationPublisher operationPublisher;
+    private final long windowNanos;
+    private final long maxDelayNanos;
+    private final int deliveryBatchSize;
+    // productId -> times of the first and the last held change
+    private final Map<String, HeldProduct> held = new ConcurrentHashMap<>();
+    private final Counter emitted;
+    private final Counter suppressed;
+    private ScheduledExecutorService scheduler;
+
+    private record HeldProduct(long firstChange, long lastChange) {}
+
+    @Autowired
+    public ProductDebouncer(StateStore stateStore, ProductLocks productLocks,
+                            PlatformTransactionManager transactionManager,
+                            BulkOperationPublisher operationPublisher, DebounceProperties debounceProperties,
+                            MeterRegistry meterRegistry) {
+        this.stateStore = stateStore;
+        this.productLocks = productLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.operationPublisher = operationPublisher;
+        this.windowNanos = debounceProperties.window().toNanos();
+        this.maxDelayNanos = debounceProperties.maxDelay().toNanos();
+        this.deliveryBatchSize = Math.max(1, debounceProperties.deliveryBatchSize());
+        this.emitted = meterRegistry.counter("searchupdater.debounce.emitted");
+        this.suppressed = meterRegistry.counter("searchupdater.debounce.suppressed");
+        Gauge.builder("searchupdater.debounce.held", held, Map::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            var thread = new Thread(task, "debouncer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // checked a few times per window, so a product is delivered at most a quarter of the window late
+        var tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), windowNanos / 4);
+        scheduler.scheduleWithFixedDelay(this::deliverSettled, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Delivers products still held and stops.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        deliver(List.copyOf(held.keySet()));
+    }
+
+    /**
+     * Holds the products of the operations, an operation for a product already held is suppressed.
+     */
+    public void hold(List<BaseSearchEngineOperation> operations) {
+        var now = System.nanoTime();
+        for (var operation : operations) {
+            held.compute(operation.getProductId(), (productId, heldProduct) -> {
+                if (heldProduct == null) {
+                    return new HeldProduct(now, now);
+                }
+                suppressed.increment();
+                return new HeldProduct(heldProduct.firstChange(), now);
+            });
+        }
+    }
+
+    private void deliverSettled() {
+        try {
+            var now = System.nanoTime();
+            var settled = new ArrayList<String>();
+            held.forEach((productId, heldProduct) -> {
+                if (now - heldProduct.lastChange() >= windowNanos || now - heldProduct.firstChange() >= maxDelayNanos) {
+                    settled.add(productId);
+                }
+            });
+            deliver(settled);
+        } catch (RuntimeException e) {
+            // the products stay held and are delivered on the next check
+            logger.error("Delivering debounced products failed", e);
+        }
+    }
+
+    private void deliver(List<String> productIds) {
+        for (var from = 0; from < productIds.size(); from += deliveryBatchSize) {
+            deliverGroup(productIds.subList(from, Math.min(from + deliveryBatchSize, productIds.size())));
+        }
+    }
+
+    // locks are held only for reading the group, request processing waits for a few products at most
+    private void deliverGroup(List<String> productIds) {
+        var operations = transactionTemplate.execute(status -> {
+            productLocks.lock(productIds);
+            // released only now, a change held later is delivered separately from the state read below
+            productIds.forEach(held::remove);
+            var products = stateStore.findProducts(productIds);
+            return productIds.stream().map(productId -> currentOperation(productId, products.get(productId))).toList();
+        });
+        if (operations != null) {
+            operationPublisher.publish(operations);
+            emitted.increment(operations.size());
+        }
+    }
+
+    private BaseSearchEngineOperation currentOperation(String productId, Product product) {
+        if (product != null && product.isValid()) {
+            var offers = stateStore.getOfferNames(productId);
+            if (!offers.isEmpty()) {
+                return new UpsertOperation(productId, product.getName(), offers);
+            }
+        }
+        return new DeleteOperation(productId);
+    }
+}
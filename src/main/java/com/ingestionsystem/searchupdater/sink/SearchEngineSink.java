@@ -0,0 +1,13 @@
+package com.ingestionsystem.searchupdater.sink;
+
+import java.io.IOException;
+
+/**
+ * Destination of bulk requests, selected with the searchupdater.sink.type property.
+ */
+public interface SearchEngineSink {
+    /**
+     * Delivers the bulk request. A failure is retried by the caller, so delivery should be idempotent.
+     */
+    void send(BulkRequest request) throws IOException;
+}
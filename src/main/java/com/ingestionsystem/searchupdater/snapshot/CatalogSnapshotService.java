@@ -0,0 +1,245 @@
+package com.ingestionsystem.searchupdater.snapshot;
+
+import com.ingestionsystem.searchupdater.config.SnapshotProperties;
+import com.ingestionsystem.searchupdater.index.DocumentFingerprints;
+import com.ingestionsystem.searchupdater.index.ProductOfferIndex;
+import com.ingestionsystem.searchupdater.oplog.OperationLog;
+import com.ingestionsystem.searchupdater.store.JpaStateStore;
+import com.ingestionsystem.searchupdater.store.StateStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes products and offers to a binary snapshot file and restores them on startup,
+ * so the in-memory database doesn't have to be replayed by producers after a restart.
+ * <p>
+ * File format: magic and version ints, records each starting with a type byte: product (id, name),
+ * offer (id, name, product id), then an end byte and the last operation log sequence (long, 0 without the log).
+ * Strings are written as the length of their UTF-8 bytes followed by the bytes, a null string as length -1.
+ * Files of another version aren't restored.
+ * Products are written before offers, so offers can be inserted right after their products.
+ * The operation log entries aren't kept, only its last sequence, so its sequences keep increasing after a restart
+ * while entries appended since the last snapshot are lost.
+ * Only the JPA state store keeps the catalog in the database, the application doesn't start with another one.
+ * <p>
+ * The snapshot is restored once every bean is created, before the web server starts accepting requests,
+ * and the offer index and document fingerprints are rebuilt from the restored catalog.
+ */
+@Component
+@ConditionalOnProperty(prefix = "searchupdater.snapshot", name = "enabled", havingValue = "true")
+public class CatalogSnapshotService implements SmartInitializingSingleton {
+
+    private final static Logger logger = LoggerFactory.getLogger(CatalogSnapshotService.class);
+    private static final int MAGIC = 0x53555053;
+    private static final int VERSION = 1;
+    private static final byte END = 0;
+    private static final byte PRODUCT = 1;
+    private static final byte OFFER = 2;
+    private static final int INSERT_BATCH_SIZE = 5_000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate snapshotTransaction;
+    private final SnapshotProperties snapshotProperties;
+    private final Optional<OperationLog> operationLog;
+    private final Optional<ProductOfferIndex> offerIndex;
+    private final Optional<DocumentFingerprints> fingerprints;
+    // a snapshot which failed to restore isn't overwritten on shutdown
+    private volatile boolean restoreFinished;
+
+    @Autowired
+    public CatalogSnapshotService(StateStore stateStore, JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager, SnapshotProperties snapshotProperties,
+                                  Optional<OperationLog> operationLog, Optional<ProductOfferIndex> offerIndex,
+                                  Optional<DocumentFingerprints> fingerprints) {
+        if (!(stateStore instanceof JpaStateStore)) {
+            throw new IllegalStateException("searchupdater.snapshot.enabled requires searchupdater.state-store=jpa, "
+                    + "state of the " + stateStore.getClass().getSimpleName() + " isn't in the database");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        // products and offers are read in one transaction which sees a single consistent state of both tables
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTransaction.setReadOnly(true);
+        this.snapshotProperties = snapshotProperties;
+        this.operationLog = operationLog;
+        this.offerIndex = offerIndex;
+        this.fingerprints = fingerprints;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            if (restoreSnapshot()) {
+                // restored rows are inserted with plain JDBC, neither of them saw them
+                offerIndex.ifPresent(ProductOfferIndex::rebuild);
+                fingerprints.ifPresent(DocumentFingerprints::rebuild);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to restore snapshot " + snapshotProperties.path(), e);
+        }
+        restoreFinished = true;
+    }
+
+    @Scheduled(initialDelayString = "${searchupdater.snapshot.interval:PT5M}",
+            fixedDelayString = "${searchupdater.snapshot.interval:PT5M}")
+    public void writePeriodically() throws IOException {
+        writeSnapshot();
+    }
+
+    @PreDestroy
+    public void writeOnShutdown() throws IOException {
+        if (restoreFinished) {
+            writeSnapshot();
+        }
+    }
+
+    public synchronized void writeSnapshot() throws IOException {
+        var start = System.nanoTime();
+        var path = snapshotProperties.path().toAbsolutePath();
+        var temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        var counts = new long[2];
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath), BUFFER_SIZE))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            snapshotTransaction.executeWithoutResult(status -> {
+                jdbcTemplate.query("select id, name from product", resultSet -> {
+                    write(output, PRODUCT, resultSet.getString(1), resultSet.getString(2), null);
+                    counts[0]++;
+                });
+                jdbcTemplate.query("select id, name, offer_id from offer", resultSet -> {
+                    write(output, OFFER, resultSet.getString(1), resultSet.getString(2), resultSet.getString(3));
+                    counts[1]++;
+                });
+            });
+            output.writeByte(END);
+            // read after the tables, so it covers every operation of the written state
+            output.writeLong(operationLog.map(OperationLog::getLastSequence).orElse(0L));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // readers never see a partially written snapshot
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Wrote snapshot of " + counts[0] + " products and " + counts[1] + " offers to " + path + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    /**
+     * Loads the snapshot into empty tables. Returns false if there is no snapshot or the tables aren't empty.
+     */
+    public synchronized boolean restoreSnapshot() throws IOException {
+        var path = snapshotProperties.path().toAbsolutePath();
+        if (!Files.exists(path)) {
+            logger.info("No snapshot to restore at " + path);
+            return false;
+        }
+        var existingProducts = jdbcTemplate.queryForObject("select count(*) from product", Long.class);
+        if (existingProducts != null && existingProducts > 0) {
+            logger.warn("Snapshot " + path + " not restored, database already contains products");
+            return false;
+        }
+        var start = System.nanoTime();
+        long products = 0;
+        long offers = 0;
+        long operationLogSequence;
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            var magic = input.readInt();
+            var version = input.readInt();
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException("Unsupported snapshot file: " + path);
+            }
+            var productBatch = new ArrayList<Object[]>(INSERT_BATCH_SIZE);
+            var offerBatch = new ArrayList<Object[]>(INSERT_BATCH_SIZE);
+            for (var type = input.readByte(); type != END; type = input.readByte()) {
+                if (type == PRODUCT) {
+                    productBatch.add(new Object[]{readString(input), readString(input)});
+                    products++;
+                    if (productBatch.size() == INSERT_BATCH_SIZE) {
+                        insert("insert into product (id, name) values (?, ?)", productBatch);
+                    }
+                } else if (type == OFFER) {
+                    // all products precede offers in the file, so they are inserted before the first offer
+                    insert("insert into product (id, name) values (?, ?)", productBatch);
+                    offerBatch.add(new Object[]{readString(input), readString(input), readString(input)});
+                    offers++;
+                    if (offerBatch.size() == INSERT_BATCH_SIZE) {
+                        insert("insert into offer (id, name, offer_id) values (?, ?, ?)", offerBatch);
+                    }
+                } else {
+                    throw new IOException("Corrupted snapshot file: " + path + ", unknown record type: " + type);
+                }
+            }
+            insert("insert into product (id, name) values (?, ?)", productBatch);
+            insert("insert into offer (id, name, offer_id) values (?, ?, ?)", offerBatch);
+            operationLogSequence = input.readLong();
+        }
+        operationLog.ifPresent(log -> log.continueAfter(operationLogSequence));
+        logger.info("Restored snapshot of " + products + " products and " + offers + " offers from " + path + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        return true;
+    }
+
+    private void insert(String sql, List<Object[]> batch) {
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+            batch.clear();
+        }
+    }
+
+    private static void write(DataOutputStream output, byte type, String id, String name, String productId) {
+        try {
+            output.writeByte(type);
+            writeString(output, id);
+            writeString(output, name);
+            if (type == OFFER) {
+                writeString(output, productId);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // not writeUTF, which fails for strings over 65535 bytes
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        var length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
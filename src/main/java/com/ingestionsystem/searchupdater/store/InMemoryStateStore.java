@@ -0,0 +1,373 @@
+package com.ingestionsystem.searchupdater.store;
+
+import com.ingestionsystem.searchupdater.model.Offer;
+import com.ingestionsystem.searchupdater.model.Product;
+import com.ingestionsystem.searchupdater.repository.DocumentEntry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * State kept only in memory, in concurrent hash maps.
+ * Offers of a product are guarded by the lock stripe of the product id and an offer record by the stripe of its id,
+ * so requests for unrelated products and offers don't block each other.
+ * Stripes are always locked in ascending order, which rules out deadlocks between requests touching several of them.
+ * Entities are copied in and out, changing a returned entity has no effect until it's saved.
+ * Writes of a transaction are kept aside, visible to its own reads only, and applied to the maps when it commits,
+ * while its product locks are still held, so a rolled back transaction leaves the store unchanged.
+ * Outside a transaction writes are applied at once.
+ */
+@Component
+@ConditionalOnProperty(prefix = "searchupdater", name = "state-store", havingValue = "in-memory")
+public class InMemoryStateStore implements StateStore {
+    private static final int STRIPES = 64;
+
+    private final Map<String, ProductState> products = new ConcurrentHashMap<>();
+    private final Map<String, OfferState> offers = new ConcurrentHashMap<>();
+    // productId -> (offerId -> offerName), in insertion order, guarded by the stripe of the product id
+    private final Map<String, Map<String, String>> offersByProduct = new ConcurrentHashMap<>();
+    private final ReadWriteLock[] stripes = new ReadWriteLock[STRIPES];
+
+    private record ProductState(String id, String name) {}
+
+    private record OfferState(String id, String name, String productId) {}
+
+    // last state written by a transaction per id, null for a deleted entity
+    private static final class PendingWrites {
+        private final Map<String, ProductState> products = new HashMap<>();
+        private final Map<String, OfferState> offers = new LinkedHashMap<>();
+    }
+
+    public InMemoryStateStore() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    @Override
+    public Optional<Product> findProduct(String productId) {
+        return Optional.ofNullable(productState(productId)).map(InMemoryStateStore::toProduct);
+    }
+
+    @Override
+    public Map<String, Product> findProducts(Collection<String> productIds) {
+        var found = new HashMap<String, Product>();
+        for (var productId : productIds) {
+            var state = productState(productId);
+            if (state != null) {
+                found.put(productId, toProduct(state));
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void saveProduct(Product product) {
+        var state = new ProductState(product.getId(), product.getName());
+        var pending = pendingWrites(true);
+        if (pending != null) {
+            pending.products.put(state.id(), state);
+        } else {
+            products.put(state.id(), state);
+        }
+    }
+
+    @Override
+    public void deleteProduct(Product product) {
+        var pending = pendingWrites(true);
+        if (pending != null) {
+            pending.products.put(product.getId(), null);
+        } else {
+            products.remove(product.getId());
+        }
+    }
+
+    @Override
+    public Optional<Offer> findOffer(String offerId) {
+        return Optional.ofNullable(offerState(offerId)).map(this::toOffer);
+    }
+
+    @Override
+    public Map<String, String> findOfferProductIds(Collection<String> offerIds) {
+        var productIds = new HashMap<String, String>();
+        offerIds.forEach(offerId -> {
+            var offer = offerState(offerId);
+            if (offer != null && offer.productId() != null) {
+                productIds.put(offerId, offer.productId());
+            }
+        });
+        return productIds;
+    }
+
+    @Override
+    public void saveOffer(Offer offer) {
+        var state = new OfferState(offer.getId(), offer.getName(),
+                offer.getProduct() != null ? offer.getProduct().getId() : null);
+        var pending = pendingWrites(true);
+        if (pending != null) {
+            pending.offers.put(state.id(), state);
+        } else {
+            applySaveOffer(state);
+        }
+    }
+
+    @Override
+    public void deleteOffer(Offer offer) {
+        var pending = pendingWrites(true);
+        if (pending != null) {
+            if (offerState(offer.getId()) != null) {
+                pending.offers.put(offer.getId(), null);
+            }
+        } else {
+            applyDeleteOffer(offer.getId());
+        }
+    }
+
+    @Override
+    public List<String> getOfferNames(String productId) {
+        return List.copyOf(offersOf(productId).values());
+    }
+
+    @Override
+    public int countOffers(String productId) {
+        var pending = pendingWrites(false);
+        if (pending != null && !pending.offers.isEmpty()) {
+            return offersOf(productId).size();
+        }
+        var lock = stripe(productId).readLock();
+        lock.lock();
+        try {
+            var productOffers = offersByProduct.get(productId);
+            return productOffers != null ? productOffers.size() : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int detachOffers(String productId) {
+        var pending = pendingWrites(true);
+        if (pending == null) {
+            return applyDetachOffers(productId);
+        }
+        var productOffers = offersOf(productId);
+        productOffers.forEach((offerId, name) -> pending.offers.put(offerId, new OfferState(offerId, name, null)));
+        return productOffers.size();
+    }
+
+    @Override
+    public Stream<DocumentEntry> streamDocumentEntries() {
+        var productIds = new TreeSet<>(products.keySet());
+        var pending = pendingWrites(false);
+        if (pending != null) {
+            productIds.addAll(pending.products.keySet());
+        }
+        return productIds.stream()
+                .map(this::productState)
+                .filter(product -> product != null && product.name() != null)
+                .flatMap(product -> offersOf(product.id()).values().stream()
+                        .map(offerName -> new DocumentEntry(product.id(), product.name(), offerName)));
+    }
+
+    private ProductState productState(String productId) {
+        var pending = pendingWrites(false);
+        if (pending != null && pending.products.containsKey(productId)) {
+            return pending.products.get(productId);
+        }
+        return products.get(productId);
+    }
+
+    private OfferState offerState(String offerId) {
+        var pending = pendingWrites(false);
+        if (pending != null && pending.offers.containsKey(offerId)) {
+            return pending.offers.get(offerId);
+        }
+        return offers.get(offerId);
+    }
+
+    // offer id -> name of offers of the product, as the transaction sees them
+    private Map<String, String> offersOf(String productId) {
+        var productOffers = new LinkedHashMap<String, String>();
+        var lock = stripe(productId).readLock();
+        lock.lock();
+        try {
+            var committed = offersByProduct.get(productId);
+            if (committed != null) {
+                productOffers.putAll(committed);
+            }
+        } finally {
+            lock.unlock();
+        }
+        var pending = pendingWrites(false);
+        if (pending != null) {
+            pending.offers.forEach((offerId, offer) -> {
+                if (offer != null && productId.equals(offer.productId())) {
+                    productOffers.put(offerId, offer.name());
+                } else {
+                    productOffers.remove(offerId);
+                }
+            });
+        }
+        return productOffers;
+    }
+
+    private PendingWrites pendingWrites(boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        var pending = (PendingWrites) TransactionSynchronizationManager.getResource(this);
+        if (pending != null || !create) {
+            return pending;
+        }
+        var writes = new PendingWrites();
+        TransactionSynchronizationManager.bindResource(this, writes);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            // runs before every afterCompletion callback, so before the product locks are released
+            @Override
+            public void afterCommit() {
+                writes.products.forEach((productId, product) -> {
+                    if (product != null) {
+                        products.put(productId, product);
+                    } else {
+                        products.remove(productId);
+                    }
+                });
+                writes.offers.forEach((offerId, offer) -> {
+                    if (offer != null) {
+                        applySaveOffer(offer);
+                    } else {
+                        applyDeleteOffer(offerId);
+                    }
+                });
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(InMemoryStateStore.this);
+            }
+        });
+        return writes;
+    }
+
+    private void applySaveOffer(OfferState offer) {
+        var offerId = offer.id();
+        var productId = offer.productId();
+        while (true) {
+            var previous = offers.get(offerId);
+            var previousProductId = previous != null ? previous.productId() : null;
+            var locked = lockStripes(offerId, productId, previousProductId);
+            try {
+                if (offers.get(offerId) != previous) {
+                    // changed by another request before the stripes were locked
+                    continue;
+                }
+                if (previousProductId != null && !previousProductId.equals(productId)) {
+                    removeFromProduct(previousProductId, offerId);
+                }
+                offers.put(offerId, offer);
+                if (productId != null) {
+                    offersByProduct.computeIfAbsent(productId, id -> new LinkedHashMap<>()).put(offerId, offer.name());
+                }
+                return;
+            } finally {
+                unlockStripes(locked);
+            }
+        }
+    }
+
+    private void applyDeleteOffer(String offerId) {
+        while (true) {
+            var previous = offers.get(offerId);
+            if (previous == null) {
+                return;
+            }
+            var locked = lockStripes(offerId, previous.productId());
+            try {
+                if (offers.get(offerId) != previous) {
+                    continue;
+                }
+                if (previous.productId() != null) {
+                    removeFromProduct(previous.productId(), offerId);
+                }
+                offers.remove(offerId);
+                return;
+            } finally {
+                unlockStripes(locked);
+            }
+        }
+    }
+
+    private int applyDetachOffers(String productId) {
+        Map<String, String> productOffers;
+        var lock = stripe(productId).writeLock();
+        lock.lock();
+        try {
+            productOffers = offersByProduct.remove(productId);
+        } finally {
+            lock.unlock();
+        }
+        if (productOffers == null) {
+            return 0;
+        }
+        // the stripe of the product is released first, an offer moved to another product meanwhile is left as it is
+        productOffers.keySet().forEach(offerId -> {
+            var offerLock = stripe(offerId).writeLock();
+            offerLock.lock();
+            try {
+                offers.computeIfPresent(offerId, (id, offer) -> productId.equals(offer.productId())
+                        ? new OfferState(id, offer.name(), null)
+                        : offer);
+            } finally {
+                offerLock.unlock();
+            }
+        });
+        return productOffers.size();
+    }
+
+    private void removeFromProduct(String productId, String offerId) {
+        var productOffers = offersByProduct.get(productId);
+        if (productOffers != null) {
+            productOffers.remove(offerId);
+        }
+    }
+
+    private ReadWriteLock stripe(String key) {
+        return stripes[stripeIndex(key)];
+    }
+
+    private static int stripeIndex(String key) {
+        var hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private int[] lockStripes(String... keys) {
+        var indexes = Arrays.stream(keys).filter(Objects::nonNull).mapToInt(InMemoryStateStore::stripeIndex)
+                .distinct().sorted().toArray();
+        for (var index : indexes) {
+            stripes[index].writeLock().lock();
+        }
+        return indexes;
+    }
+
+    private void unlockStripes(int[] indexes) {
+        for (int i = indexes.length - 1; i >= 0; i--) {
+            stripes[indexes[i]].writeLock().unlock();
+        }
+    }
+
+    private Offer toOffer(OfferState offer) {
+        var product = offer.productId() != null ? productState(offer.productId()) : null;
+        return new Offer(offer.id(), offer.name(), product != null ? toProduct(product) : null);
+    }
+
+    private static Product toProduct(ProductState product) {
+        return new Product(product.id(), product.name());
+    }
+}
@@ -0,0 +1,163 @@
+package com.ingestionsystem.searchupdater.store;
+
+import com.ingestionsystem.searchupdater.config.WriteBehindProperties;
+import com.ingestionsystem.searchupdater.index.ProductOfferIndex;
+import com.ingestionsystem.searchupdater.model.Offer;
+import com.ingestionsystem.searchupdater.model.Product;
+import com.ingestionsystem.searchupdater.repository.DocumentEntry;
+import com.ingestionsystem.searchupdater.repository.OfferEntry;
+import com.ingestionsystem.searchupdater.repository.OfferRepository;
+import com.ingestionsystem.searchupdater.repository.ProductRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * State kept in the database through Spring Data JPA, with offers of products read from the in-memory index.
+ */
+@Component
+@ConditionalOnProperty(prefix = "searchupdater", name = "state-store", havingValue = "jpa", matchIfMissing = true)
+public class JpaStateStore implements StateStore {
+    private final ProductRepository productRepository;
+    private final OfferRepository offerRepository;
+    private final ProductOfferIndex offerIndex;
+    private final EntityManager entityManager;
+    private final WriteBehindProperties writeBehindProperties;
+
+    @Autowired
+    public JpaStateStore(ProductRepository productRepository, OfferRepository offerRepository,
+                         ProductOfferIndex offerIndex, EntityManager entityManager,
+                         WriteBehindProperties writeBehindProperties) {
+        this.productRepository = productRepository;
+        this.offerRepository = offerRepository;
+        this.offerIndex = offerIndex;
+        this.entityManager = entityManager;
+        this.writeBehindProperties = writeBehindProperties;
+    }
+
+    @Override
+    public Optional<Product> findProduct(String productId) {
+        return productRepository.findById(productId);
+    }
+
+    @Override
+    public Map<String, Product> findProducts(Collection<String> productIds) {
+        if (productIds.isEmpty()) {
+            return Map.of();
+        }
+        return productRepository.findAllById(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, product -> product));
+    }
+
+    @Override
+    public void saveProduct(Product product) {
+        if (!writeBehindProperties.enabled()) {
+            // merged as any other entity, the select before insert is skipped only in write-behind mode
+            product.markNotNew();
+        }
+        productRepository.updateOrInsert(product);
+    }
+
+    @Override
+    public void deleteProduct(Product product) {
+        productRepository.delete(product);
+        offerIndex.removeProduct(product.getId());
+    }
+
+    @Override
+    public Optional<Offer> findOffer(String offerId) {
+        // one round trip for the offer and its current product, instead of a lazy load of the product on first use;
+        // either is still taken from the persistence context or the second-level cache when it's there
+        var graph = entityManager.getEntityGraph(Offer.WITH_PRODUCT);
+        return Optional.ofNullable(entityManager.find(Offer.class, offerId, Map.of(SpecHints.HINT_SPEC_LOAD_GRAPH, graph)));
+    }
+
+    @Override
+    public Map<String, String> findOfferProductIds(Collection<String> offerIds) {
+        if (offerIds.isEmpty()) {
+            return Map.of();
+        }
+        // queried instead of found by id, the persistence context may hold offers changed by others since
+        return offerRepository.findLinkedEntriesByIdIn(offerIds).stream()
+                .collect(Collectors.toMap(OfferEntry::id, OfferEntry::productId));
+    }
+
+    @Override
+    public void saveOffer(Offer offer) {
+        if (!writeBehindProperties.enabled()) {
+            offer.markNotNew();
+        }
+        offerRepository.updateOrInsert(offer);
+        offerIndex.putOffer(offer.getProduct() != null ? offer.getProduct().getId() : null, offer.getId(), offer.getName());
+    }
+
+    @Override
+    public void deleteOffer(Offer offer) {
+        offerRepository.deleteById(offer.getId());
+        offerIndex.removeOffer(offer.getProduct() != null ? offer.getProduct().getId() : null, offer.getId());
+    }
+
+    @Override
+    public List<String> getOfferNames(String productId) {
+        return offerIndex.getOfferNames(productId);
+    }
+
+    @Override
+    public int countOffers(String productId) {
+        return offerIndex.countOffers(productId);
+    }
+
+    @Override
+    public int detachOffers(String productId) {
+        var detached = offerRepository.detachFromProduct(productId);
+        evictOffersOf(productId);
+        offerIndex.removeProduct(productId);
+        return detached;
+    }
+
+    // the bulk update bypasses the persistence context, only its offers of the product are stale,
+    // everything else loaded in the transaction is kept instead of being read again
+    private void evictOffersOf(String productId) {
+        var persistenceContext = entityManager.unwrap(SessionImplementor.class).getPersistenceContextInternal();
+        var stale = new ArrayList<Offer>();
+        for (var entry : persistenceContext.reentrantSafeEntityEntries()) {
+            if (entry.getKey() instanceof Offer offer && offer.getProduct() != null
+                    && productId.equals(offer.getProduct().getId())) {
+                stale.add(offer);
+            }
+        }
+        stale.forEach(entityManager::detach);
+    }
+
+    @Override
+    public Stream<DocumentEntry> streamDocumentEntries() {
+        return offerRepository.streamAllDocumentEntries();
+    }
+
+    @Override
+    public void bufferWrites() {
+        if (writeBehindProperties.enabled()) {
+            // offers of products are read from the index, which doesn't need pending writes to be flushed
+            entityManager.setFlushMode(FlushModeType.COMMIT);
+        }
+    }
+
+    @Override
+    public void flushAndClear() {
+        // keep the persistence context bounded by the chunk size instead of the whole batch
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -0,0 +1,71 @@
+package com.ingestionsystem.searchupdater.store;
+
+import com.ingestionsystem.searchupdater.model.Offer;
+import com.ingestionsystem.searchupdater.model.Product;
+import com.ingestionsystem.searchupdater.repository.DocumentEntry;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * State of products and offers used by providers to compute search engine operations.
+ * Selected with the searchupdater.state-store property: jpa (default) or in-memory.
+ */
+public interface StateStore {
+    Optional<Product> findProduct(String productId);
+
+    /**
+     * Returns the products found, by product id, read together instead of one by one.
+     */
+    Map<String, Product> findProducts(Collection<String> productIds);
+
+    void saveProduct(Product product);
+
+    void deleteProduct(Product product);
+
+    Optional<Offer> findOffer(String offerId);
+
+    /**
+     * Returns ids of products the offers are related to, by offer id. Offers without a product are left out.
+     * Reads the current state, not entities already loaded by the transaction.
+     */
+    Map<String, String> findOfferProductIds(Collection<String> offerIds);
+
+    /**
+     * Saves the offer together with its relation to offer.getProduct(), which may be null.
+     */
+    void saveOffer(Offer offer);
+
+    void deleteOffer(Offer offer);
+
+    List<String> getOfferNames(String productId);
+
+    int countOffers(String productId);
+
+    /**
+     * Removes the relation between the product and all its offers. Returns the number of offers which were related.
+     */
+    int detachOffers(String productId);
+
+    /**
+     * Streams offer names of products with a name, ordered by product id, the content of searchable product documents.
+     * The stream has to be closed.
+     */
+    Stream<DocumentEntry> streamDocumentEntries();
+
+    /**
+     * Called at the start of a transaction processing a request or a chunk of requests.
+     */
+    default void bufferWrites() {
+    }
+
+    /**
+     * Called at the end of a chunk of requests, so state kept for the transaction doesn't grow with the batch,
+     * and before product locks are taken again, so offers loaded under the previous locks are read anew.
+     */
+    default void flushAndClear() {
+    }
+}
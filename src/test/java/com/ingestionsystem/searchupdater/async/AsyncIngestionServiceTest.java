@@ -0,0 +1,238 @@
+package com.ingestionsystem.searchupdater.async;
+
+import com.ingestionsystem.searchupdater.config.AsyncProperties;
+import com.ingestionsystem.searchupdater.config.BatchProperties;
+import com.ingestionsystem.searchupdater.operation.DeleteOperation;
+import com.ingestionsystem.searchupdater.operation.RequestOperationType;
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import com.ingestionsystem.searchupdater.service.IngestionResult;
+import com.ingestionsystem.searchupdater.service.UpdaterService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class AsyncIngestionServiceTest {
+
+    private final UpdaterService updaterService = mock(UpdaterService.class);
+    private AsyncIngestionService service;
+
+    @BeforeEach
+    public void init() {
+        // every product request is answered with deletion of the product, others are rejected
+        doAnswer(invocation -> {
+            Iterator<IngestionRequest> requests = invocation.getArgument(0);
+            Consumer<IngestionResult> consumer = invocation.getArgument(1);
+            var index = 0;
+            while (requests.hasNext()) {
+                var request = requests.next();
+                consumer.accept(request.productId() != null
+                        ? IngestionResult.success(index, List.of(new DeleteOperation(request.productId())))
+                        : IngestionResult.failure(index, "Unknown product"));
+                index++;
+            }
+            return null;
+        }).when(updaterService).processRequests(any(), any());
+        service = createService(100);
+    }
+
+    @AfterEach
+    public void clean() throws InterruptedException {
+        service.stop();
+    }
+
+    @Test
+    void shouldPublishResultsOfAcceptedRequestsInTicketOrder() {
+        // given
+        var subscriber = new RecordingEmitter();
+        service.subscribe(subscriber, null);
+        service.start();
+
+        //when
+        var first = service.submit(deleteProduct("productA"));
+        var second = service.submit(deleteOffer());
+        var third = service.submit(deleteProduct("productB"));
+
+        //then
+        await().atMost(Duration.ofSeconds(5)).until(() -> subscriber.results.size() == 3);
+        assertThat(second.id()).isEqualTo(first.id() + 1);
+        assertThat(third.id()).isEqualTo(second.id() + 1);
+        assertThat(subscriber.results).extracting(TicketResult::ticket)
+                .containsExactly(first.id(), second.id(), third.id());
+        assertThat(subscriber.results.get(0).operations().getFirst().getProductId()).isEqualTo("productA");
+        assertThat(subscriber.results.get(1).error()).isEqualTo("Unknown product");
+    }
+
+    @Test
+    void shouldReplayResultsAfterLastReceivedTicket() {
+        // given
+        var subscriber = new RecordingEmitter();
+        service.subscribe(subscriber, null);
+        service.start();
+        var first = service.submit(deleteProduct("productA"));
+        var second = service.submit(deleteProduct("productB"));
+        await().atMost(Duration.ofSeconds(5)).until(() -> subscriber.results.size() == 2);
+
+        //when
+        var reconnected = new RecordingEmitter();
+        service.subscribe(reconnected, first.id());
+
+        //then
+        await().atMost(Duration.ofSeconds(5)).until(() -> reconnected.results.size() == 1);
+        assertThat(reconnected.results).extracting(TicketResult::ticket).containsExactly(second.id());
+    }
+
+    @Test
+    void shouldReplayEverythingToSubscriberOfPreviousRun() throws InterruptedException {
+        // given
+        var previousTicket = service.submit(deleteProduct("productA"));
+        service.stop();
+        // a restart takes longer than a millisecond
+        Thread.sleep(2);
+        service = createService(100);
+        var subscriber = new RecordingEmitter();
+        service.subscribe(subscriber, null);
+        service.start();
+        var ticket = service.submit(deleteProduct("productB"));
+        await().atMost(Duration.ofSeconds(5)).until(() -> subscriber.results.size() == 1);
+
+        //when
+        var reconnected = new RecordingEmitter();
+        service.subscribe(reconnected, previousTicket.id());
+
+        //then
+        assertThat(ticket.id()).isGreaterThan(previousTicket.id());
+        await().atMost(Duration.ofSeconds(5)).until(() -> reconnected.results.size() == 1);
+        assertThat(reconnected.results).extracting(TicketResult::ticket).containsExactly(ticket.id());
+    }
+
+    @Test
+    void shouldKeepPublishingWhileSubscriberIsBlocked() throws InterruptedException {
+        // given
+        service.stop();
+        service = createService(100, 2);
+        var blocked = new BlockedEmitter();
+        var subscriber = new RecordingEmitter();
+        service.subscribe(blocked, null);
+        service.subscribe(subscriber, null);
+        service.start();
+
+        //when
+        for (int i = 0; i < 10; i++) {
+            service.submit(deleteProduct("product" + i));
+            var published = i + 1;
+            await().atMost(Duration.ofSeconds(5)).until(() -> subscriber.results.size() == published);
+        }
+
+        //then
+        blocked.release.countDown();
+        // disconnected when its buffer of 2 overflowed, at most the result being sent then gets through
+        Thread.sleep(100);
+        assertThat(blocked.sent.get()).isLessThanOrEqualTo(1);
+    }
+
+    @Test
+    void shouldProcessQueuedRequestsBeforeStopping() throws InterruptedException {
+        // given
+        var subscriber = new RecordingEmitter();
+        service.subscribe(subscriber, null);
+        for (int i = 0; i < 10; i++) {
+            service.submit(deleteProduct("product" + i));
+        }
+        service.start();
+
+        //when
+        service.stop();
+
+        //then
+        assertThat(subscriber.results).hasSize(10);
+        assertThatThrownBy(() -> service.submit(deleteProduct("productA")))
+                .isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void shouldRejectInvalidRequestBeforeQueueing() {
+        // given
+        var request = new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, null, null, null);
+        doThrow(new IllegalArgumentException("Field: productId must not be null for operation: DELETE_PRODUCT"))
+                .when(updaterService).validateRequest(request);
+
+        //when, then
+        assertThatThrownBy(() -> service.submit(request)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldRefuseRequestsWhenQueueIsFull() throws InterruptedException {
+        // given
+        service.stop();
+        service = createService(1);
+        service.submit(deleteProduct("productA"));
+
+        //when, then
+        assertThatThrownBy(() -> service.submit(deleteProduct("productB")))
+                .isInstanceOf(RejectedExecutionException.class);
+    }
+
+    private AsyncIngestionService createService(int queueCapacity) {
+        return createService(queueCapacity, 100);
+    }
+
+    private AsyncIngestionService createService(int queueCapacity, int subscriberBuffer) {
+        var service = new AsyncIngestionService(updaterService,
+                new AsyncProperties(true, queueCapacity, 10, Duration.ofMinutes(1), subscriberBuffer, Duration.ofSeconds(5)),
+                new BatchProperties(2, true), new SimpleMeterRegistry());
+        // not started, tests start the worker when they need it
+        return service;
+    }
+
+    private static IngestionRequest deleteProduct(String productId) {
+        return new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, productId, null, null);
+    }
+
+    private static IngestionRequest deleteOffer() {
+        return new IngestionRequest(RequestOperationType.DELETE_OFFER, "offerA", null, null, null, null);
+    }
+
+    private static class BlockedEmitter extends SseEmitter {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger sent = new AtomicInteger();
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            sent.incrementAndGet();
+        }
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<TicketResult> results = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            builder.build().stream()
+                    .filter(data -> data.getData() instanceof TicketResult)
+                    .forEach(data -> results.add((TicketResult) data.getData()));
+        }
+    }
+}
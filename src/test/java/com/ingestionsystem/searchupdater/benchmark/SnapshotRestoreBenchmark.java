@@ -0,0 +1,105 @@
+package com.ingestionsystem.searchupdater.benchmark;
+
+import com.ingestionsystem.searchupdater.config.SnapshotProperties;
+import com.ingestionsystem.searchupdater.index.ProductOfferIndex;
+import com.ingestionsystem.searchupdater.repository.OfferRepository;
+import com.ingestionsystem.searchupdater.repository.ProductRepository;
+import com.ingestionsystem.searchupdater.snapshot.CatalogSnapshotService;
+import com.ingestionsystem.searchupdater.store.StateStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures writing a catalog snapshot and restoring it (including the offer index rebuild) as done on startup.
+ * Run with: gradle test --tests '*SnapshotRestoreBenchmark' -Dbenchmark=true -Dbenchmark.offers=1000000
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class SnapshotRestoreBenchmark {
+
+    private static final int OFFERS = Integer.getInteger("benchmark.offers", 1_000_000);
+    private static final int OFFERS_PER_PRODUCT = Integer.getInteger("benchmark.offersPerProduct", 100);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OfferRepository offerRepository;
+
+    @Autowired
+    private StateStore stateStore;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void writeAndRestoreSnapshot() throws Exception {
+        var path = directory.resolve("catalog.snapshot");
+        var snapshotService = new CatalogSnapshotService(stateStore, jdbcTemplate, transactionManager,
+                new SnapshotProperties(true, path, Duration.ofMinutes(5)), Optional.empty(),
+                Optional.empty(), Optional.empty());
+        var products = (OFFERS + OFFERS_PER_PRODUCT - 1) / OFFERS_PER_PRODUCT;
+        seed(products);
+
+        var writeStart = System.nanoTime();
+        snapshotService.writeSnapshot();
+        var writeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - writeStart);
+
+        offerRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+
+        var restoreStart = System.nanoTime();
+        assertThat(snapshotService.restoreSnapshot()).isTrue();
+        var restoreMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - restoreStart);
+        var offerIndex = new ProductOfferIndex(productRepository, offerRepository, new SimpleMeterRegistry());
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> offerIndex.rebuild());
+        var startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - restoreStart);
+
+        assertThat(offerRepository.count()).isEqualTo(OFFERS);
+        assertThat(productRepository.count()).isEqualTo(products);
+        System.out.printf("Snapshot of %d offers (%d products, %d MB): written in %d ms, restored in %d ms, "
+                        + "restored with index rebuild in %d ms%n", OFFERS, products, Files.size(path) >> 20,
+                writeMillis, restoreMillis, startupMillis);
+        offerRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+    }
+
+    private void seed(int products) {
+        var batch = new ArrayList<Object[]>();
+        for (int product = 0; product < products; product++) {
+            batch.add(new Object[]{"product" + product, "product" + product + "Name"});
+        }
+        jdbcTemplate.batchUpdate("insert into product (id, name) values (?, ?)", batch);
+        batch.clear();
+        for (int offer = 0; offer < OFFERS; offer++) {
+            batch.add(new Object[]{"offer" + offer, "offer" + offer + "Name", "product" + offer / OFFERS_PER_PRODUCT});
+            if (batch.size() == 10_000) {
+                jdbcTemplate.batchUpdate("insert into offer (id, name, offer_id) values (?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into offer (id, name, offer_id) values (?, ?, ?)", batch);
+    }
+}
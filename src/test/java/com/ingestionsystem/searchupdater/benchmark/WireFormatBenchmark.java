@@ -0,0 +1,72 @@
+package com.ingestionsystem.searchupdater.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+import com.ingestionsystem.searchupdater.operation.UpsertOperation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares JSON, Smile and CBOR for responses of upsert operations: bytes on the wire per operation
+ * and time per operation to serialize and to parse them.
+ * Run with: gradle test --tests '*WireFormatBenchmark' -Dbenchmark=true -Dbenchmark.offersPerProduct=100
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class WireFormatBenchmark {
+
+    private static final int OPERATIONS = Integer.getInteger("benchmark.operations", 1_000);
+    private static final int OFFERS_PER_PRODUCT = Integer.getInteger("benchmark.offersPerProduct", 100);
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 50);
+
+    @Test
+    void compareWireFormats() throws Exception {
+        var operations = createOperations();
+        var mappers = Map.of("json", new ObjectMapper(), "smile", new SmileMapper(), "cbor", new CBORMapper());
+        for (var format : List.of("json", "smile", "cbor")) {
+            var mapper = mappers.get(format);
+            // warm up before measuring, so the JIT compiled parsers and generators are compared
+            for (int round = 0; round < ROUNDS; round++) {
+                mapper.readTree(mapper.writeValueAsBytes(operations));
+            }
+            byte[] body = null;
+            var writeStart = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                body = mapper.writeValueAsBytes(operations);
+            }
+            var writeNanos = System.nanoTime() - writeStart;
+            List<JsonNode> parsed = null;
+            var readStart = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                parsed = mapper.readValue(body, new TypeReference<>() {});
+            }
+            var readNanos = System.nanoTime() - readStart;
+
+            assertThat(parsed).hasSize(OPERATIONS);
+            var measured = (long) ROUNDS * OPERATIONS;
+            System.out.printf("%-5s %8d bytes/operation, serialized in %6d ns/operation, parsed in %6d ns/operation%n",
+                    format, body.length / OPERATIONS, writeNanos / measured, readNanos / measured);
+        }
+    }
+
+    private static List<BaseSearchEngineOperation> createOperations() {
+        var operations = new ArrayList<BaseSearchEngineOperation>(OPERATIONS);
+        for (int product = 0; product < OPERATIONS; product++) {
+            var offerNames = new ArrayList<String>(OFFERS_PER_PRODUCT);
+            for (int offer = 0; offer < OFFERS_PER_PRODUCT; offer++) {
+                offerNames.add("buy offer " + offer + " of product " + product);
+            }
+            operations.add(new UpsertOperation("product" + product, "great product " + product, offerNames));
+        }
+        return operations;
+    }
+}
@@ -0,0 +1,101 @@
+package com.ingestionsystem.searchupdater.benchmark;
+
+import com.ingestionsystem.searchupdater.operation.RequestOperationType;
+import com.ingestionsystem.searchupdater.repository.OfferRepository;
+import com.ingestionsystem.searchupdater.repository.ProductRepository;
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import com.ingestionsystem.searchupdater.service.UpdaterService;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Imports offers through the batch path and prints inserts per second, once with the default save() path,
+ * merging every entity without JDBC batching, and once with write-behind. JDBC batching is configured when
+ * the application starts, so each mode runs in its own application context.
+ * Run with: gradle test --tests '*WriteBehindImportBenchmark*' -Dbenchmark=true -Dbenchmark.offers=1000000
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class WriteBehindImportBenchmark {
+
+    private static final int OFFERS = Integer.getInteger("benchmark.offers", 1_000_000);
+    private static final int OFFERS_PER_PRODUCT = Integer.getInteger("benchmark.offersPerProduct", 100);
+
+    @Nested
+    @SpringBootTest
+    class WithoutWriteBehind extends OfferImport {
+        @Test
+        void importOffers() {
+            importOffers("without write-behind");
+        }
+    }
+
+    @Nested
+    @SpringBootTest(properties = "searchupdater.write-behind.enabled=true")
+    class WithWriteBehind extends OfferImport {
+        @Test
+        void importOffers() {
+            importOffers("with write-behind");
+        }
+    }
+
+    abstract class OfferImport {
+
+        @Autowired
+        private UpdaterService updaterService;
+
+        @Autowired
+        private ProductRepository productRepository;
+
+        @Autowired
+        private OfferRepository offerRepository;
+
+        void importOffers(String mode) {
+            var products = (OFFERS + OFFERS_PER_PRODUCT - 1) / OFFERS_PER_PRODUCT;
+
+            var start = System.nanoTime();
+            updaterService.processRequests(requests(), result -> {});
+            var seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+
+            assertThat(offerRepository.count()).isEqualTo(OFFERS);
+            offerRepository.deleteAllInBatch();
+            productRepository.deleteAllInBatch();
+            System.out.printf("Imported %d offers (%d per product) %s: %.0f inserts/s%n", OFFERS, OFFERS_PER_PRODUCT,
+                    mode, (OFFERS + products) / seconds);
+        }
+    }
+
+    // a product followed by its offers, generated lazily so the import itself doesn't hold the requests in memory
+    private static Iterator<IngestionRequest> requests() {
+        return new Iterator<>() {
+            private int offer = 0;
+            private boolean productSent = false;
+
+            @Override
+            public boolean hasNext() {
+                return offer < OFFERS;
+            }
+
+            @Override
+            public IngestionRequest next() {
+                var productId = "product" + offer / OFFERS_PER_PRODUCT;
+                if (offer % OFFERS_PER_PRODUCT == 0 && !productSent) {
+                    productSent = true;
+                    return new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, productId, null,
+                            productId + "Name");
+                }
+                productSent = false;
+                var offerId = "offer" + offer++;
+                return new IngestionRequest(RequestOperationType.UPSERT_OFFER, offerId, offerId + "Name", null,
+                        productId, null);
+            }
+        };
+    }
+}
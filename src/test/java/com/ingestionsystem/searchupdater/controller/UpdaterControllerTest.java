@@ -0,0 +1,208 @@
+package com.ingestionsystem.searchupdater.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.ingestionsystem.searchupdater.config.WireFormatConfiguration;
+import com.ingestionsystem.searchupdater.operation.DeleteOperation;
+import com.ingestionsystem.searchupdater.operation.RequestOperationType;
+import com.ingestionsystem.searchupdater.operation.UpsertOperation;
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import com.ingestionsystem.searchupdater.service.IngestionResult;
+import com.ingestionsystem.searchupdater.service.UpdaterService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.ingestionsystem.searchupdater.config.WireFormatConfiguration.APPLICATION_SMILE_VALUE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(UpdaterController.class)
+@Import(WireFormatConfiguration.class)
+public class UpdaterControllerTest {
+
+    private static final IngestionRequest REQUEST = new IngestionRequest(
+            RequestOperationType.UPSERT_OFFER, "offerA", "offerAName", null, "productA", null);
+    private static final UpsertOperation OPERATION =
+            new UpsertOperation("productA", "productAName", List.of("offerAName"));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SmileMapper smileMapper = new SmileMapper();
+    private final CBORMapper cborMapper = new CBORMapper();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private UpdaterService updaterService;
+
+    @Test
+    void shouldAcceptAndAnswerSmile() throws Exception {
+        // given
+        when(updaterService.getBaseSearchEngineOperations(REQUEST)).thenReturn(List.of(OPERATION));
+
+        //when
+        var response = mockMvc.perform(post("/api/ingest")
+                        .contentType(APPLICATION_SMILE_VALUE)
+                        .accept(APPLICATION_SMILE_VALUE)
+                        .content(smileMapper.writeValueAsBytes(REQUEST)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_SMILE_VALUE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        //then
+        var operations = smileMapper.readTree(response);
+        assertThat(operations.get(0).get("productId").asText()).isEqualTo("productA");
+        assertThat(operations.get(0).get("offerNames").get(0).asText()).isEqualTo("offerAName");
+        assertThat(operations.get(0).get("operationType").asText()).isEqualTo("UPSERT_SEARCHABLE_PRODUCT");
+    }
+
+    @Test
+    void shouldAcceptAndAnswerCborBatch() throws Exception {
+        // given
+        var deleteRequest = new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, "productB", null, null);
+        when(updaterService.getBatchSearchEngineOperations(List.of(REQUEST, deleteRequest))).thenReturn(List.of(
+                IngestionResult.success(0, List.of(OPERATION)),
+                IngestionResult.success(1, List.of(new DeleteOperation("productB")))));
+
+        //when
+        var response = mockMvc.perform(post("/api/ingest/batch")
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .accept(MediaType.APPLICATION_CBOR)
+                        .content(cborMapper.writeValueAsBytes(List.of(REQUEST, deleteRequest))))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        //then
+        var results = cborMapper.readTree(response);
+        assertThat(results.get(1).get("index").asInt()).isEqualTo(1);
+        assertThat(results.get(1).get("operations").get(0).get("operationType").asText())
+                .isEqualTo("DELETE_SEARCHABLE_PRODUCT");
+    }
+
+    @Test
+    void shouldStreamSmileValues() throws Exception {
+        // given
+        answerStreamWithDeletes();
+        var body = new ByteArrayOutputStream();
+        try (var values = smileMapper.writer().writeValues(body)) {
+            values.write(new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, "productA", null, null));
+            values.write(new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, "productB", null, null));
+        }
+
+        //when
+        var response = mockMvc.perform(post("/api/ingest/stream")
+                        .contentType(APPLICATION_SMILE_VALUE)
+                        .content(body.toByteArray()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_SMILE_VALUE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        //then
+        try (var results = smileMapper.readerFor(JsonNode.class).<JsonNode>readValues(response)) {
+            assertThat(results.readAll())
+                    .extracting(result -> result.get("index").asInt(),
+                            result -> result.get("operations").get(0).get("productId").asText())
+                    .containsExactly(tuple(0, "productA"), tuple(1, "productB"));
+        }
+    }
+
+    @Test
+    void shouldAnswerEveryNdjsonLineWithItsResult() throws Exception {
+        // given
+        answerStreamWithDeletes();
+
+        //when, then
+        mockMvc.perform(post("/api/ingest/stream")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(deleteProductLine("productA") + "\n" + deleteProductLine("productB") + "\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(
+                        "{\"index\":0,\"operations\":[{\"productId\":\"productA\",\"operationType\":\"DELETE_SEARCHABLE_PRODUCT\"}]}\n"
+                                + "{\"index\":1,\"operations\":[{\"productId\":\"productB\",\"operationType\":\"DELETE_SEARCHABLE_PRODUCT\"}]}\n"));
+    }
+
+    @Test
+    void shouldSkipBlankNdjsonLines() throws Exception {
+        // given
+        answerStreamWithDeletes();
+
+        //when, then
+        mockMvc.perform(post("/api/ingest/stream")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("\n" + deleteProductLine("productA") + "\n  \n\n" + deleteProductLine("productB")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(
+                        "{\"index\":0,\"operations\":[{\"productId\":\"productA\",\"operationType\":\"DELETE_SEARCHABLE_PRODUCT\"}]}\n"
+                                + "{\"index\":1,\"operations\":[{\"productId\":\"productB\",\"operationType\":\"DELETE_SEARCHABLE_PRODUCT\"}]}\n"));
+    }
+
+    @Test
+    void shouldAnswerMalformedNdjsonLineAndContinue() throws Exception {
+        // given
+        answerStreamWithDeletes();
+
+        //when
+        var response = mockMvc.perform(post("/api/ingest/stream")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(deleteProductLine("productA") + "\n{\"operation\":\n" + deleteProductLine("productB") + "\n"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        //then
+        var results = response.lines().map(this::readTree).toList();
+        assertThat(results).extracting(result -> result.get("index").asInt()).containsExactly(0, 1, 2);
+        assertThat(results.get(0).get("operations").get(0).get("productId").asText()).isEqualTo("productA");
+        assertThat(results.get(1).has("operations")).isFalse();
+        assertThat(results.get(1).get("error").asText()).startsWith("Malformed request: ");
+        assertThat(results.get(2).get("operations").get(0).get("productId").asText()).isEqualTo("productB");
+    }
+
+    // answers like the service: a delete for each request, and a failure for a missing request
+    private void answerStreamWithDeletes() {
+        doAnswer(invocation -> {
+            Iterator<IngestionRequest> requests = invocation.getArgument(0);
+            Consumer<IngestionResult> consumer = invocation.getArgument(1);
+            var index = 0;
+            while (requests.hasNext()) {
+                var request = requests.next();
+                consumer.accept(request == null
+                        ? IngestionResult.failure(index++, "Request body can't be null")
+                        : IngestionResult.success(index++, List.of(new DeleteOperation(request.productId()))));
+            }
+            return null;
+        }).when(updaterService).processRequests(any(), any());
+    }
+
+    private String deleteProductLine(String productId) throws Exception {
+        return objectMapper.writeValueAsString(
+                new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, productId, null, null));
+    }
+
+    private JsonNode readTree(String line) {
+        try {
+            return objectMapper.readTree(line);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ingestionsystem.searchupdater.hotkey;
+
+import com.ingestionsystem.searchupdater.config.HotProductProperties;
+import com.ingestionsystem.searchupdater.operation.DeleteOperation;
+import com.ingestionsystem.searchupdater.operation.RequestOperationType;
+import com.ingestionsystem.searchupdater.operation.UpsertOperation;
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HotProductsTest {
+
+    @Test
+    void shouldKeepHeavyHittersWithBoundedError() {
+        // given
+        var sketch = new SpaceSaving(10);
+        var random = new Random(42);
+
+        //when
+        for (int i = 0; i < 10_000; i++) {
+            // every third add goes to one of two hot products, the rest spreads over a thousand cold ones
+            if (i % 3 == 0) {
+                sketch.add(i % 2 == 0 ? "hotA" : "hotB", 1);
+            } else {
+                sketch.add("cold" + random.nextInt(1000), 1);
+            }
+        }
+
+        //then
+        var top = sketch.top(2);
+        assertThat(top).extracting(HeavyHitter::productId).containsExactlyInAnyOrder("hotA", "hotB");
+        for (var hitter : top) {
+            var trueCount = 10_000 / 6;
+            assertThat(hitter.count()).isGreaterThanOrEqualTo(trueCount);
+            assertThat(hitter.count() - hitter.error()).isLessThanOrEqualTo(trueCount + 1);
+            // the error never exceeds total / capacity
+            assertThat(hitter.error()).isLessThanOrEqualTo(10_000 / 10);
+        }
+        assertThat(sketch.top(100)).hasSize(10);
+    }
+
+    @Test
+    void shouldKeepLargestValues() {
+        // given
+        var largest = new LargestValues(2);
+
+        //when
+        largest.put("productA", 5);
+        largest.put("productB", 1);
+        largest.put("productC", 3);
+        largest.put("productD", 2);
+        largest.put("productA", 4);
+
+        //then
+        assertThat(largest.top(10)).containsExactly(
+                new LargestValues.KeyValue("productA", 4), new LargestValues.KeyValue("productC", 3));
+        largest.remove("productA");
+        assertThat(largest.top(10)).containsExactly(new LargestValues.KeyValue("productC", 3));
+    }
+
+    @Test
+    void shouldReportProductsOfRequestsAndOperations() {
+        // given
+        var hotProducts = new HotProducts(new HotProductProperties(true, 100, 2));
+
+        //when
+        hotProducts.recordRequest(new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "x", null, "productA", null));
+        hotProducts.recordRequest(new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerB", "y", null, "productA", null));
+        hotProducts.recordRequest(new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productB", null, "name"));
+        hotProducts.recordRequest(new IngestionRequest(RequestOperationType.DELETE_OFFER, "offerA", null, null, null, null));
+        hotProducts.recordRequest(null);
+        hotProducts.recordOperations(List.of(
+                new UpsertOperation("productA", "nameA", List.of("x", "y")),
+                new UpsertOperation("productB", "nameB", List.of("z")),
+                new UpsertOperation("productC", "nameC", List.of("x", "y", "z"))));
+        hotProducts.recordOperations(List.of(new DeleteOperation("productC")));
+
+        //then
+        var report = hotProducts.report();
+        assertThat(report.requests()).containsExactly(new HeavyHitter("productA", 2, 0), new HeavyHitter("productB", 1, 0));
+        assertThat(report.operations()).first().isEqualTo(new HeavyHitter("productC", 2, 0));
+        assertThat(report.offers()).containsExactly(new LargestProduct("productA", 2), new LargestProduct("productB", 1));
+        assertThat(hotProducts.report(1).offers()).containsExactly(new LargestProduct("productA", 2));
+    }
+}
@@ -0,0 +1,129 @@
+package com.ingestionsystem.searchupdater.lock;
+
+import com.ingestionsystem.searchupdater.config.LockProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ProductLocksTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ProductLocks productLocks =
+            new ProductLocks(new LockProperties(1024, Duration.ofMillis(100)), meterRegistry);
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    public void clean() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldBlockSameProductUntilTransactionCompletes() throws Exception {
+        // given
+        var locked = new CountDownLatch(1);
+        var commit = new CountDownLatch(1);
+        var first = executor.submit(() -> inTransaction(() -> {
+            productLocks.lock(List.of("productA"));
+            locked.countDown();
+            await(commit);
+        }));
+        locked.await();
+
+        //when
+        var second = executor.submit(() -> inTransaction(() -> productLocks.lock(List.of("productA"))));
+
+        //then
+        assertThatThrownBy(() -> second.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        assertThat(meterRegistry.get("searchupdater.locks.waiting").gauge().value()).isEqualTo(1);
+        commit.countDown();
+        first.get(1, TimeUnit.SECONDS);
+        second.get(1, TimeUnit.SECONDS);
+        assertThat(meterRegistry.get("searchupdater.locks.wait").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotBlockUnrelatedProducts() throws Exception {
+        // given
+        var locked = new CountDownLatch(1);
+        var commit = new CountDownLatch(1);
+        var first = executor.submit(() -> inTransaction(() -> {
+            productLocks.lock(List.of("productA"));
+            locked.countDown();
+            await(commit);
+        }));
+        locked.await();
+
+        //when
+        var second = executor.submit(() -> inTransaction(() -> productLocks.lock(List.of("productB"))));
+
+        //then
+        second.get(1, TimeUnit.SECONDS);
+        commit.countDown();
+        first.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void shouldTimeOutWhenTransactionHoldingLocksWaitsForMore() throws Exception {
+        // given
+        var locked = new CountDownLatch(1);
+        var commit = new CountDownLatch(1);
+        var other = executor.submit(() -> inTransaction(() -> {
+            productLocks.lock(List.of("productB"));
+            locked.countDown();
+            await(commit);
+        }));
+        locked.await();
+
+        //when
+        var nested = executor.submit(() -> inTransaction(() -> {
+            productLocks.lock(List.of("productA"));
+            productLocks.lock(List.of("productB"));
+        }));
+
+        //then
+        assertThatThrownBy(() -> nested.get(1, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(CannotAcquireLockException.class);
+        commit.countDown();
+        other.get(1, TimeUnit.SECONDS);
+        // locks of the failed transaction are released with it
+        executor.submit(() -> inTransaction(() -> productLocks.lock(List.of("productA", "productB"))))
+                .get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void shouldRejectLockingOutsideOfTransaction() {
+        assertThatThrownBy(() -> productLocks.lock(List.of("productA"))).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static void inTransaction(Runnable work) {
+        TransactionSynchronizationManager.initSynchronization();
+        var status = TransactionSynchronization.STATUS_ROLLED_BACK;
+        try {
+            work.run();
+            status = TransactionSynchronization.STATUS_COMMITTED;
+        } finally {
+            for (var synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(status);
+            }
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.ingestionsystem.searchupdater.metrics;
+
+import org.opentest4j.AssertionFailedError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Upper bounds of SQL statements by kind. A JDBC batch is prepared once, so it counts as one statement.
+ */
+public record SqlBudget(
+    int selects,
+    int inserts,
+    int updates,
+    int deletes)
+{
+    public static SqlBudget of(int selects, int inserts, int updates, int deletes) {
+        return new SqlBudget(selects, inserts, updates, deletes);
+    }
+
+    /**
+     * Fails when the statements exceed the budget, with the expected and actual counts as a diff.
+     */
+    public void check(List<String> statements) {
+        var actual = new SqlBudget(count(statements, "select"), count(statements, "insert"),
+                count(statements, "update"), count(statements, "delete"));
+        var exceeded = new ArrayList<String>();
+        addIfExceeded(exceeded, "SELECT", selects, actual.selects());
+        addIfExceeded(exceeded, "INSERT", inserts, actual.inserts());
+        addIfExceeded(exceeded, "UPDATE", updates, actual.updates());
+        addIfExceeded(exceeded, "DELETE", deletes, actual.deletes());
+        if (exceeded.isEmpty()) {
+            return;
+        }
+        var message = new StringBuilder("SQL statements over budget: ")
+                .append(String.join(", ", exceeded))
+                .append("\nStatements:");
+        for (int i = 0; i < statements.size(); i++) {
+            message.append("\n  ").append(i + 1).append(". ").append(statements.get(i));
+        }
+        throw new AssertionFailedError(message.toString(), format(), actual.format());
+    }
+
+    private String format() {
+        return "SELECT " + selects + "\nINSERT " + inserts + "\nUPDATE " + updates + "\nDELETE " + deletes;
+    }
+
+    private static void addIfExceeded(List<String> exceeded, String kind, int budget, int actual) {
+        if (actual > budget) {
+            exceeded.add(kind + " " + actual + " > " + budget);
+        }
+    }
+
+    private static int count(List<String> statements, String kind) {
+        return (int) statements.stream()
+                .filter(statement -> statement.stripLeading().toLowerCase(Locale.ROOT).startsWith(kind))
+                .count();
+    }
+}
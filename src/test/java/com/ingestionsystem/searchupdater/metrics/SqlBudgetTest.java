@@ -0,0 +1,36 @@
+package com.ingestionsystem.searchupdater.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.opentest4j.AssertionFailedError;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SqlBudgetTest {
+
+    private static final List<String> STATEMENTS = List.of(
+            "select p1_0.id,p1_0.name from product p1_0 where p1_0.id=?",
+            "select o1_0.id,o1_0.name from offer o1_0 where o1_0.offer_id=?",
+            "insert into offer (name,offer_id,id) values (?,?,?)");
+
+    @Test
+    void shouldPassStatementsWithinBudget() {
+        assertThatCode(() -> SqlBudget.of(2, 1, 0, 0).check(STATEMENTS)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void shouldReportStatementsOverBudgetAsDiff() {
+        assertThatThrownBy(() -> SqlBudget.of(1, 1, 0, 0).check(STATEMENTS))
+                .isInstanceOfSatisfying(AssertionFailedError.class, error -> {
+                    assertThat(error.getExpected().getStringRepresentation())
+                            .isEqualTo("SELECT 1\nINSERT 1\nUPDATE 0\nDELETE 0");
+                    assertThat(error.getActual().getStringRepresentation())
+                            .isEqualTo("SELECT 2\nINSERT 1\nUPDATE 0\nDELETE 0");
+                })
+                .hasMessageStartingWith("SQL statements over budget: SELECT 2 > 1")
+                .hasMessageContaining("2. select o1_0.id,o1_0.name from offer o1_0 where o1_0.offer_id=?");
+    }
+}
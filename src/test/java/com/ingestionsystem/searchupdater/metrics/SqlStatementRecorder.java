@@ -0,0 +1,54 @@
+package com.ingestionsystem.searchupdater.metrics;
+
+import jakarta.persistence.EntityManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Statement counter which also records the SQL prepared on the current thread while an action runs,
+ * so tests can guard how many round trips an operation takes.
+ */
+public class SqlStatementRecorder extends SqlStatementCounter {
+
+    private final ThreadLocal<List<String>> recorded = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        var statements = recorded.get();
+        if (statements != null) {
+            statements.add(sql);
+        }
+        return super.inspect(sql);
+    }
+
+    /**
+     * Runs the action like a request in a new transaction, starting with an empty persistence context,
+     * and fails when the statements it prepared on this thread exceed the budget.
+     * Writes pending before the action are flushed first, so they aren't counted, and entities loaded before it
+     * are cleared, so the action can't take them from the context instead of reading them.
+     */
+    public <T> T assertWithin(SqlBudget budget, EntityManager entityManager, Supplier<T> action) {
+        entityManager.flush();
+        entityManager.clear();
+        return assertWithin(budget, action);
+    }
+
+    /**
+     * Runs the action and fails when the statements it prepared on this thread exceed the budget.
+     * Entities already in the persistence context are used as they are, see the overload clearing it.
+     */
+    public <T> T assertWithin(SqlBudget budget, Supplier<T> action) {
+        var statements = new ArrayList<String>();
+        recorded.set(statements);
+        T result;
+        try {
+            result = action.get();
+        } finally {
+            recorded.remove();
+        }
+        budget.check(statements);
+        return result;
+    }
+}
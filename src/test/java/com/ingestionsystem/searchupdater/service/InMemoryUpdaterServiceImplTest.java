@@ -0,0 +1,16 @@
+package com.ingestionsystem.searchupdater.service;
+
+import com.ingestionsystem.searchupdater.config.WriteBehindProperties;
+import com.ingestionsystem.searchupdater.store.InMemoryStateStore;
+import com.ingestionsystem.searchupdater.store.StateStore;
+
+/**
+ * Runs all scenarios of UpdaterServiceImplTest against the in-memory state store.
+ */
+public class InMemoryUpdaterServiceImplTest extends UpdaterServiceImplTest {
+
+    @Override
+    protected StateStore createStateStore(WriteBehindProperties writeBehindProperties) {
+        return new InMemoryStateStore();
+    }
+}
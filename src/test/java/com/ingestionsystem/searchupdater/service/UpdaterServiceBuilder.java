@@ -0,0 +1,104 @@
+package com.ingestionsystem.searchupdater.service;
+
+import com.ingestionsystem.searchupdater.config.BatchProperties;
+import com.ingestionsystem.searchupdater.config.DeltaProperties;
+import com.ingestionsystem.searchupdater.config.LockProperties;
+import com.ingestionsystem.searchupdater.hotkey.HotProducts;
+import com.ingestionsystem.searchupdater.index.DocumentFingerprints;
+import com.ingestionsystem.searchupdater.lane.ExecutionLanes;
+import com.ingestionsystem.searchupdater.lock.ProductLocks;
+import com.ingestionsystem.searchupdater.metrics.IngestionMetrics;
+import com.ingestionsystem.searchupdater.metrics.SqlStatementCounter;
+import com.ingestionsystem.searchupdater.oplog.OperationLog;
+import com.ingestionsystem.searchupdater.sink.BulkOperationPublisher;
+import com.ingestionsystem.searchupdater.sink.ProductDebouncer;
+import com.ingestionsystem.searchupdater.store.StateStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+
+/**
+ * Builds {@link UpdaterServiceImpl} for tests. Features backed by optional collaborators stay off until set.
+ */
+public class UpdaterServiceBuilder {
+
+    private final StateStore stateStore;
+    private final PlatformTransactionManager transactionManager;
+    private BatchProperties batchProperties = new BatchProperties(10, false);
+    private ProductLocks productLocks =
+            new ProductLocks(new LockProperties(1024, Duration.ofSeconds(1)), new SimpleMeterRegistry());
+    private DeltaProperties deltaProperties = new DeltaProperties(false, 0, 0);
+    private IngestionMetrics metrics = new IngestionMetrics(new SimpleMeterRegistry(), new SqlStatementCounter());
+    private ExecutionLanes lanes;
+    private BulkOperationPublisher operationPublisher;
+    private ProductDebouncer debouncer;
+    private OperationLog operationLog;
+    private DocumentFingerprints fingerprints;
+    private HotProducts hotProducts;
+
+    private UpdaterServiceBuilder(StateStore stateStore, PlatformTransactionManager transactionManager) {
+        this.stateStore = stateStore;
+        this.transactionManager = transactionManager;
+    }
+
+    public static UpdaterServiceBuilder updaterService(StateStore stateStore,
+                                                       PlatformTransactionManager transactionManager) {
+        return new UpdaterServiceBuilder(stateStore, transactionManager);
+    }
+
+    public UpdaterServiceBuilder batchProperties(BatchProperties batchProperties) {
+        this.batchProperties = batchProperties;
+        return this;
+    }
+
+    public UpdaterServiceBuilder productLocks(ProductLocks productLocks) {
+        this.productLocks = productLocks;
+        return this;
+    }
+
+    public UpdaterServiceBuilder deltaProperties(DeltaProperties deltaProperties) {
+        this.deltaProperties = deltaProperties;
+        return this;
+    }
+
+    public UpdaterServiceBuilder metrics(IngestionMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public UpdaterServiceBuilder lanes(ExecutionLanes lanes) {
+        this.lanes = lanes;
+        return this;
+    }
+
+    public UpdaterServiceBuilder operationPublisher(BulkOperationPublisher operationPublisher) {
+        this.operationPublisher = operationPublisher;
+        return this;
+    }
+
+    public UpdaterServiceBuilder debouncer(ProductDebouncer debouncer) {
+        this.debouncer = debouncer;
+        return this;
+    }
+
+    public UpdaterServiceBuilder operationLog(OperationLog operationLog) {
+        this.operationLog = operationLog;
+        return this;
+    }
+
+    public UpdaterServiceBuilder fingerprints(DocumentFingerprints fingerprints) {
+        this.fingerprints = fingerprints;
+        return this;
+    }
+
+    public UpdaterServiceBuilder hotProducts(HotProducts hotProducts) {
+        this.hotProducts = hotProducts;
+        return this;
+    }
+
+    public UpdaterServiceImpl build() {
+        return new UpdaterServiceImpl(stateStore, transactionManager, batchProperties, productLocks, deltaProperties,
+                metrics, lanes, operationPublisher, debouncer, operationLog, fingerprints, hotProducts);
+    }
+}
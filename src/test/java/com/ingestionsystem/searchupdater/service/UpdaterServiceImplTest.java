@@ -1,22 +1,75 @@
 package com.ingestionsystem.searchupdater.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ingestionsystem.searchupdater.config.BatchProperties;
+import com.ingestionsystem.searchupdater.config.DebounceProperties;
+import com.ingestionsystem.searchupdater.config.DeltaProperties;
+import com.ingestionsystem.searchupdater.config.FingerprintProperties;
+import com.ingestionsystem.searchupdater.config.HotProductProperties;
+import com.ingestionsystem.searchupdater.config.LaneProperties;
+import com.ingestionsystem.searchupdater.config.LockProperties;
+import com.ingestionsystem.searchupdater.config.MetricsConfiguration;
+import com.ingestionsystem.searchupdater.config.OperationLogProperties;
+import com.ingestionsystem.searchupdater.config.SinkProperties;
+import com.ingestionsystem.searchupdater.config.WriteBehindProperties;
+import com.ingestionsystem.searchupdater.hotkey.HeavyHitter;
+import com.ingestionsystem.searchupdater.hotkey.HotProducts;
+import com.ingestionsystem.searchupdater.hotkey.LargestProduct;
+import com.ingestionsystem.searchupdater.index.DocumentFingerprints;
+import com.ingestionsystem.searchupdater.index.ProductOfferIndex;
+import com.ingestionsystem.searchupdater.lane.ExecutionLanes;
+import com.ingestionsystem.searchupdater.lock.ProductLocks;
+import com.ingestionsystem.searchupdater.metrics.IngestionMetrics;
+import com.ingestionsystem.searchupdater.metrics.SqlBudget;
+import com.ingestionsystem.searchupdater.metrics.SqlStatementRecorder;
 import com.ingestionsystem.searchupdater.model.Offer;
 import com.ingestionsystem.searchupdater.model.Product;
 import com.ingestionsystem.searchupdater.operation.*;
+import com.ingestionsystem.searchupdater.oplog.LoggedOperation;
+import com.ingestionsystem.searchupdater.oplog.OperationLog;
 import com.ingestionsystem.searchupdater.repository.OfferRepository;
+import com.ingestionsystem.searchupdater.repository.OperationLogRepository;
 import com.ingestionsystem.searchupdater.repository.ProductRepository;
+import com.ingestionsystem.searchupdater.sink.BulkOperationPublisher;
+import com.ingestionsystem.searchupdater.sink.InMemorySearchEngineSink;
+import com.ingestionsystem.searchupdater.sink.ProductDebouncer;
+import com.ingestionsystem.searchupdater.sink.SearchEngineSink;
+import com.ingestionsystem.searchupdater.store.JpaStateStore;
+import com.ingestionsystem.searchupdater.store.StateStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
-
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.ingestionsystem.searchupdater.service.UpdaterServiceBuilder.updaterService;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @DataJpaTest
+@Import({MetricsConfiguration.class, SqlStatementRecorder.class})
 public class UpdaterServiceImplTest {
 
     @MockitoSpyBean
@@ -25,16 +78,57 @@ public class UpdaterServiceImplTest {
     @MockitoSpyBean
     private OfferRepository offerRepository;
 
+    @Autowired
+    private OperationLogRepository operationLogRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SqlStatementRecorder sqlStatementRecorder;
+
     @InjectMocks
     private UpdaterServiceImpl service;
 
+    private StateStore stateStore;
+
+    private ProductLocks productLocks;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private IngestionMetrics metrics;
+
     @BeforeEach
     public void init() {
-        service = new UpdaterServiceImpl(productRepository, offerRepository);
+        stateStore = spy(createStateStore(new WriteBehindProperties(false, 100)));
+        productLocks = spy(new ProductLocks(new LockProperties(1024, Duration.ofSeconds(1)), new SimpleMeterRegistry()));
+        service = updaterService(stateStore, transactionManager)
+                .batchProperties(new BatchProperties(2, true)).productLocks(productLocks).build();
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new IngestionMetrics(meterRegistry, sqlStatementRecorder);
+    }
+
+    protected StateStore createStateStore(WriteBehindProperties writeBehindProperties) {
+        var offerIndex = new ProductOfferIndex(productRepository, offerRepository, new SimpleMeterRegistry());
+        return new JpaStateStore(productRepository, offerRepository, offerIndex, entityManager, writeBehindProperties);
+    }
+
+    // fails when the request takes more round trips than the budget, counting the writes flushed at commit,
+    // which the test transaction never reaches. Starts with an empty persistence context, as a new transaction does.
+    private List<BaseSearchEngineOperation> ingest(IngestionRequest request, SqlBudget budget) {
+        return sqlStatementRecorder.assertWithin(budget, entityManager, () -> {
+            var operations = service.getBaseSearchEngineOperations(request);
+            entityManager.flush();
+            return operations;
+        });
     }
 
     @AfterEach
     public void clean() {
+        operationLogRepository.deleteAll();
         offerRepository.deleteAll();
         productRepository.deleteAll();
     }
@@ -44,7 +138,7 @@ public class UpdaterServiceImplTest {
         // given
         var productId = "productA";
         var product = new Product(productId, "productAName");
-        productRepository.save(product);
+        stateStore.saveProduct(product);
         var request = new IngestionRequest(
                 RequestOperationType.DELETE_PRODUCT,
                 null,
@@ -55,11 +149,11 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(1, 0, 1, 1));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(0);
-        assertThat(productRepository.findAll().size()).isEqualTo(0);
+        assertThat(stateStore.findProduct(productId)).isEmpty();
     }
 
     @Test
@@ -67,8 +161,8 @@ public class UpdaterServiceImplTest {
         // given
         var productId = "productA";
         var product = new Product(productId, "productAName");
-        productRepository.save(product);
-        offerRepository.save(new Offer("offerA", "offerA", product));
+        stateStore.saveProduct(product);
+        stateStore.saveOffer(new Offer("offerA", "offerA", product));
 
         var request = new IngestionRequest(
                 RequestOperationType.DELETE_PRODUCT,
@@ -80,16 +174,16 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(1, 0, 1, 1));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(1);
         var operation = responseOperations.getFirst();
         assertThat(operation.getOperationType()).isEqualTo(SearchEngineOperationType.DELETE_SEARCHABLE_PRODUCT);
         assertThat(operation.getProductId()).isEqualTo(productId);
-        verify(productRepository, times(1)).delete(any());
-        assertThat(productRepository.findAll().size()).isEqualTo(0);
-        var savedOfferOptional = offerRepository.findById("offerA");
+        verify(stateStore, times(1)).deleteProduct(any());
+        assertThat(stateStore.findProduct(productId)).isEmpty();
+        var savedOfferOptional = stateStore.findOffer("offerA");
         assertThat(savedOfferOptional.isPresent()).isTrue();
         savedOfferOptional.ifPresent(offer -> assertThat(offer.getProduct()).isNull());
     }
@@ -107,11 +201,11 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(1, 0, 0, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(0);
-        verify(productRepository, times(0)).delete(any());
+        verify(stateStore, times(0)).deleteProduct(any());
 
     }
 
@@ -130,11 +224,11 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(3, 1, 0, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(0);
-        assertThat(productRepository.findAll().size()).isEqualTo(1);
+        assertThat(stateStore.findProduct(productId)).isPresent();
     }
 
     @Test
@@ -162,7 +256,7 @@ public class UpdaterServiceImplTest {
 
         //when
         service.getBaseSearchEngineOperations(offerRequest);
-        var responseOperations = service.getBaseSearchEngineOperations(productRequest);
+        var responseOperations = ingest(productRequest, SqlBudget.of(1, 0, 1, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(1);
@@ -171,8 +265,8 @@ public class UpdaterServiceImplTest {
         assertThat(operation.getProductId()).isEqualTo(productId);
         assertThat(operation.getProductName()).isEqualTo(productName);
         assertThat(operation.getOfferNames().size()).isEqualTo(1);
-        assertThat(offerRepository.findAll().size()).isEqualTo(1);
-        assertThat(productRepository.findAll().size()).isEqualTo(1);
+        assertThat(stateStore.getOfferNames(productId)).containsExactly("offerA");
+        assertThat(stateStore.findProduct(productId)).isPresent();
     }
 
     @Test
@@ -202,14 +296,12 @@ public class UpdaterServiceImplTest {
 
         //when
         service.getBaseSearchEngineOperations(productRequest);
-        var responseOperations = service.getBaseSearchEngineOperations(updateProductRequest);
+        var responseOperations = ingest(updateProductRequest, SqlBudget.of(1, 0, 1, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(0);
-        assertThat(offerRepository.findAll().size()).isEqualTo(0);
-        var products = productRepository.findAll();
-        assertThat(products.size()).isEqualTo(1);
-        assertThat(products.getFirst().getName()).isEqualTo(newProductName);
+        assertThat(stateStore.getOfferNames(productId)).isEmpty();
+        assertThat(stateStore.findProduct(productId)).get().extracting(Product::getName).isEqualTo(newProductName);
     }
 
     @Test
@@ -248,7 +340,7 @@ public class UpdaterServiceImplTest {
         //when
         service.getBaseSearchEngineOperations(offerRequest);
         service.getBaseSearchEngineOperations(productRequest);
-        var responseOperations = service.getBaseSearchEngineOperations(updateProductRequest);
+        var responseOperations = ingest(updateProductRequest, SqlBudget.of(1, 0, 1, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(1);
@@ -257,8 +349,8 @@ public class UpdaterServiceImplTest {
         assertThat(operation.getProductId()).isEqualTo(productId);
         assertThat(operation.getProductName()).isEqualTo(newProductName);
         assertThat(operation.getOfferNames().size()).isEqualTo(1);
-        assertThat(offerRepository.findAll().size()).isEqualTo(1);
-        assertThat(productRepository.findAll().size()).isEqualTo(1);
+        assertThat(stateStore.getOfferNames(productId)).containsExactly("offerA");
+        assertThat(stateStore.findProduct(productId)).isPresent();
     }
 
     @Test
@@ -267,7 +359,8 @@ public class UpdaterServiceImplTest {
         var productId = "productA";
         var productName = "productAName";
         var product = new Product(productId, "productAName");
-        productRepository.save(product);
+        stateStore.saveProduct(product);
+        clearInvocations(stateStore);
 
         var updateProductRequest = new IngestionRequest(
                 RequestOperationType.UPSERT_PRODUCT,
@@ -280,15 +373,13 @@ public class UpdaterServiceImplTest {
 
         //when
         service.getBaseSearchEngineOperations(updateProductRequest);
-        var responseOperations = service.getBaseSearchEngineOperations(updateProductRequest);
+        var responseOperations = ingest(updateProductRequest, SqlBudget.of(1, 0, 0, 0));
 
         //then
-        verify(productRepository, times(0)).updateOrInsert(any());
+        verify(stateStore, times(0)).saveProduct(any());
         assertThat(responseOperations.size()).isEqualTo(0);
-        assertThat(offerRepository.findAll().size()).isEqualTo(0);
-        var products = productRepository.findAll();
-        assertThat(products.size()).isEqualTo(1);
-        assertThat(products.getFirst().getName()).isEqualTo(productName);
+        assertThat(stateStore.getOfferNames(productId)).isEmpty();
+        assertThat(stateStore.findProduct(productId)).get().extracting(Product::getName).isEqualTo(productName);
     }
 
     @Test
@@ -296,10 +387,10 @@ public class UpdaterServiceImplTest {
         // given
         var productId = "productA";
         var product = new Product(productId, "productAName");
-        productRepository.save(product);
+        stateStore.saveProduct(product);
         var offerId = "offerA";
         var offerName = "offerA";
-        offerRepository.save(new Offer(offerId, offerName, product));
+        stateStore.saveOffer(new Offer(offerId, offerName, product));
 
         var request = new IngestionRequest(
                 RequestOperationType.UPSERT_OFFER,
@@ -311,16 +402,16 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(2, 0, 1, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(1);
         var operation = (DeleteOperation) responseOperations.getFirst();
         assertThat(operation.getOperationType()).isEqualTo(SearchEngineOperationType.DELETE_SEARCHABLE_PRODUCT);
         assertThat(operation.getProductId()).isEqualTo(productId);
-        offerRepository.findById(offerId).ifPresent(offer -> assertThat(offer.getProduct()).isNull());
+        stateStore.findOffer(offerId).ifPresent(offer -> assertThat(offer.getProduct()).isNull());
 
-        assertThat(productRepository.findAll().size()).isEqualTo(1);
+        assertThat(stateStore.findProduct(productId)).isPresent();
     }
 
     @Test
@@ -331,11 +422,11 @@ public class UpdaterServiceImplTest {
         var productId2 = "productB";
         var productName2 = "productBName";
         var product1 = new Product(productId1, productName1);
-        productRepository.save(product1);
-        productRepository.save(new Product(productId2, productName2));
+        stateStore.saveProduct(product1);
+        stateStore.saveProduct(new Product(productId2, productName2));
         var offerId = "offerA";
         var offerName = "offerA";
-        offerRepository.save(new Offer(offerId, offerName, product1));
+        stateStore.saveOffer(new Offer(offerId, offerName, product1));
 
         var request = new IngestionRequest(
                 RequestOperationType.UPSERT_OFFER,
@@ -347,7 +438,7 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(4, 0, 1, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(2);
@@ -371,11 +462,11 @@ public class UpdaterServiceImplTest {
                 .findFirst().get()
         ).isEqualTo(productId2);
 
-        assertThat(offerRepository.findById(offerId).isPresent()).isTrue();
-        offerRepository.findById(offerId).ifPresent(offer -> assertThat(offer.getProduct().getId()).isEqualTo(productId2));
+        assertThat(stateStore.findOffer(offerId).isPresent()).isTrue();
+        stateStore.findOffer(offerId).ifPresent(offer -> assertThat(offer.getProduct().getId()).isEqualTo(productId2));
 
-        assertThat(productRepository.findById(productId1).isPresent()).isTrue();
-        assertThat(productRepository.findAll().size()).isEqualTo(2);
+        assertThat(stateStore.findProduct(productId1).isPresent()).isTrue();
+        assertThat(stateStore.findProduct(productId2)).isPresent();
     }
 
     @Test
@@ -383,13 +474,13 @@ public class UpdaterServiceImplTest {
         // given
         var productId = "productA";
         var product = new Product(productId, "productAName");
-        productRepository.save(product);
+        stateStore.saveProduct(product);
         var offerId1 = "offerA";
         var offerName1 = "offerA";
         var offerId2 = "offerB";
         var offerName2 = "offerB";
-        offerRepository.save(new Offer(offerId1, offerName1, product));
-        offerRepository.save(new Offer(offerId2, offerName2, product));
+        stateStore.saveOffer(new Offer(offerId1, offerName1, product));
+        stateStore.saveOffer(new Offer(offerId2, offerName2, product));
 
         var request = new IngestionRequest(
                 RequestOperationType.UPSERT_OFFER,
@@ -401,7 +492,7 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(2, 0, 1, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(1);
@@ -409,13 +500,13 @@ public class UpdaterServiceImplTest {
         assertThat(operation.getOperationType()).isEqualTo(SearchEngineOperationType.UPSERT_SEARCHABLE_PRODUCT);
         assertThat(operation.getProductId()).isEqualTo(productId);
 
-        assertThat(offerRepository.findById(offerId1).isPresent()).isTrue();
-        assertThat(offerRepository.findById(offerId2).isPresent()).isTrue();
+        assertThat(stateStore.findOffer(offerId1).isPresent()).isTrue();
+        assertThat(stateStore.findOffer(offerId2).isPresent()).isTrue();
 
-        offerRepository.findById(offerId1).ifPresent(offer -> assertThat(offer.getProduct()).isNull());
-        offerRepository.findById(offerId2).ifPresent(offer -> assertThat(offer.getProduct().getId()).isEqualTo(productId));
+        stateStore.findOffer(offerId1).ifPresent(offer -> assertThat(offer.getProduct()).isNull());
+        stateStore.findOffer(offerId2).ifPresent(offer -> assertThat(offer.getProduct().getId()).isEqualTo(productId));
 
-        assertThat(productRepository.findAll().size()).isEqualTo(1);
+        assertThat(stateStore.findProduct(productId)).isPresent();
     }
 
     @Test
@@ -425,17 +516,17 @@ public class UpdaterServiceImplTest {
         var productId2 = "productB";
         var product1 = new Product(productId1, "productAName");
         var product2 = new Product(productId2, "productAName");
-        productRepository.save(product1);
-        productRepository.save(product2);
+        stateStore.saveProduct(product1);
+        stateStore.saveProduct(product2);
         var offerId1 = "offerA";
         var offerName1 = "offerA";
         var offerId2 = "offerB";
         var offerName2 = "offerB";
         var offerId3 = "offerC";
         var offerName3 = "offerC";
-        offerRepository.save(new Offer(offerId1, offerName1, product1));
-        offerRepository.save(new Offer(offerId2, offerName2, product1));
-        offerRepository.save(new Offer(offerId3, offerName3, product2));
+        stateStore.saveOffer(new Offer(offerId1, offerName1, product1));
+        stateStore.saveOffer(new Offer(offerId2, offerName2, product1));
+        stateStore.saveOffer(new Offer(offerId3, offerName3, product2));
 
         var request = new IngestionRequest(
                 RequestOperationType.UPSERT_OFFER,
@@ -447,7 +538,7 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(3, 0, 1, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(2);
@@ -469,26 +560,27 @@ public class UpdaterServiceImplTest {
                 .count()
         ).isEqualTo(1);
 
-        assertThat(offerRepository.findById(offerId1).isPresent()).isTrue();
-        assertThat(offerRepository.findById(offerId2).isPresent()).isTrue();
-        assertThat(offerRepository.findById(offerId3).isPresent()).isTrue();
+        assertThat(stateStore.findOffer(offerId1).isPresent()).isTrue();
+        assertThat(stateStore.findOffer(offerId2).isPresent()).isTrue();
+        assertThat(stateStore.findOffer(offerId3).isPresent()).isTrue();
 
-        offerRepository.findById(offerId1).ifPresent(offer -> assertThat(offer.getProduct().getId()).isEqualTo(productId2));
-        offerRepository.findById(offerId2).ifPresent(offer -> assertThat(offer.getProduct().getId()).isEqualTo(productId1));
-        offerRepository.findById(offerId3).ifPresent(offer -> assertThat(offer.getProduct().getId()).isEqualTo(productId2));
+        stateStore.findOffer(offerId1).ifPresent(offer -> assertThat(offer.getProduct().getId()).isEqualTo(productId2));
+        stateStore.findOffer(offerId2).ifPresent(offer -> assertThat(offer.getProduct().getId()).isEqualTo(productId1));
+        stateStore.findOffer(offerId3).ifPresent(offer -> assertThat(offer.getProduct().getId()).isEqualTo(productId2));
 
-        assertThat(productRepository.findAll().size()).isEqualTo(2);
+        assertThat(stateStore.findProduct(productId1)).isPresent();
+        assertThat(stateStore.findProduct(productId2)).isPresent();
     }
 
     @Test
     void shouldNotUpdateExistingOfferIfNoChanges() {
         var productId = "productA";
         var product = new Product(productId, "productAName");
-        productRepository.save(product);
+        stateStore.saveProduct(product);
         var offerId1 = "offerA";
         var offerName1 = "offerA";
 
-        offerRepository.save(new Offer(offerId1, offerName1, product));
+        stateStore.saveOffer(new Offer(offerId1, offerName1, product));
 
         var request = new IngestionRequest(
                 RequestOperationType.UPSERT_OFFER,
@@ -500,7 +592,7 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(2, 0, 0, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(0);
@@ -511,10 +603,10 @@ public class UpdaterServiceImplTest {
         // given
         var productId = "productA";
         var product = new Product(productId, "productAName");
-        productRepository.save(product);
+        stateStore.saveProduct(product);
         var offerId1 = "offerA";
         var offerName1 = "offerA";
-        offerRepository.save(new Offer(offerId1, offerName1, product));
+        stateStore.saveOffer(new Offer(offerId1, offerName1, product));
 
         var request = new IngestionRequest(
                 RequestOperationType.DELETE_OFFER,
@@ -526,15 +618,15 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(2, 0, 0, 1));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(1);
         var operation = (DeleteOperation) responseOperations.getFirst();
         assertThat(operation.getOperationType()).isEqualTo(SearchEngineOperationType.DELETE_SEARCHABLE_PRODUCT);
         assertThat(operation.getProductId()).isEqualTo(productId);
-        verify(offerRepository, times(1)).deleteById(any());
-        assertThat(offerRepository.findAll().size()).isEqualTo(0);
+        verify(stateStore, times(1)).deleteOffer(any());
+        assertThat(stateStore.findOffer(offerId1)).isEmpty();
     }
 
     @Test
@@ -542,13 +634,13 @@ public class UpdaterServiceImplTest {
         // given
         var productId = "productA";
         var product = new Product(productId, "productAName");
-        productRepository.save(product);
+        stateStore.saveProduct(product);
         var offerId1 = "offerA";
         var offerName1 = "offerA";
-        offerRepository.save(new Offer(offerId1, offerName1, product));
+        stateStore.saveOffer(new Offer(offerId1, offerName1, product));
         var offerId2 = "offerB";
         var offerName2 = "offerB";
-        offerRepository.save(new Offer(offerId2, offerName2, product));
+        stateStore.saveOffer(new Offer(offerId2, offerName2, product));
 
         var request = new IngestionRequest(
                 RequestOperationType.DELETE_OFFER,
@@ -560,15 +652,16 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(2, 0, 0, 1));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(1);
         var operation = (UpsertOperation) responseOperations.getFirst();
         assertThat(operation.getOperationType()).isEqualTo(SearchEngineOperationType.UPSERT_SEARCHABLE_PRODUCT);
         assertThat(operation.getProductId()).isEqualTo(productId);
-        verify(offerRepository, times(1)).deleteById(any());
-        assertThat(offerRepository.findAll().size()).isEqualTo(1);
+        verify(stateStore, times(1)).deleteOffer(any());
+        assertThat(stateStore.findOffer(offerId1)).isEmpty();
+        assertThat(stateStore.findOffer(offerId2)).isPresent();
     }
 
     @Test
@@ -576,7 +669,7 @@ public class UpdaterServiceImplTest {
         // given
         var offerId1 = "offerA";
         var offerName1 = "offerA";
-        offerRepository.save(new Offer(offerId1, offerName1));
+        stateStore.saveOffer(new Offer(offerId1, offerName1));
         var request = new IngestionRequest(
                 RequestOperationType.DELETE_OFFER,
                 offerId1,
@@ -587,12 +680,12 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(2, 0, 0, 1));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(0);
-        verify(offerRepository, times(1)).deleteById(any());
-        assertThat(offerRepository.findAll().size()).isEqualTo(0);
+        verify(stateStore, times(1)).deleteOffer(any());
+        assertThat(stateStore.findOffer(offerId1)).isEmpty();
     }
 
     @Test
@@ -609,12 +702,12 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(3, 0, 0, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(0);
-        verify(offerRepository, times(0)).deleteById(any());
-        assertThat(offerRepository.findAll().size()).isEqualTo(0);
+        verify(stateStore, times(0)).deleteOffer(any());
+        assertThat(stateStore.findOffer(offerId1)).isEmpty();
     }
 
     @Test
@@ -633,14 +726,13 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
-        var secondResponseOperations = service.getBaseSearchEngineOperations(request);
+        var responseOperations = ingest(request, SqlBudget.of(4, 1, 0, 0));
+        var secondResponseOperations = ingest(request, SqlBudget.of(2, 0, 0, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(0);
         assertThat(secondResponseOperations.size()).isEqualTo(0);
-        assertThat(productRepository.findAll().size()).isEqualTo(0);
-        assertThat(offerRepository.findAll().size()).isEqualTo(1);
+        assertThat(stateStore.findOffer(offerId)).get().extracting(Offer::getProduct).isNull();
     }
 
     @Test
@@ -668,14 +760,15 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var responseOperations = service.getBaseSearchEngineOperations(request);
-        var secondResponseOperations = service.getBaseSearchEngineOperations(secondRequest);
+        var responseOperations = ingest(request, SqlBudget.of(4, 1, 0, 0));
+        var secondResponseOperations = ingest(secondRequest, SqlBudget.of(5, 1, 1, 0));
 
         //then
         assertThat(responseOperations.size()).isEqualTo(0);
         assertThat(secondResponseOperations.size()).isEqualTo(0);
-        assertThat(productRepository.findAll().size()).isEqualTo(1);
-        assertThat(offerRepository.findAll().size()).isEqualTo(1);
+        assertThat(stateStore.findProduct(relatedProductId)).isPresent();
+        assertThat(stateStore.findOffer(offerId)).get().extracting(offer -> offer.getProduct().getId())
+                .isEqualTo(relatedProductId);
     }
 
     @Test
@@ -714,15 +807,16 @@ public class UpdaterServiceImplTest {
         //when
         service.getBaseSearchEngineOperations(request);
         service.getBaseSearchEngineOperations(secondRequest);
-        var thirdResponseOperations = service.getBaseSearchEngineOperations(thirdRequest);
+        var thirdResponseOperations = ingest(thirdRequest, SqlBudget.of(1, 0, 1, 0));
 
         //then
         assertThat(thirdResponseOperations.size()).isEqualTo(1);
         var operation = (UpsertOperation) thirdResponseOperations.getFirst();
         assertThat(operation.getOperationType()).isEqualTo(SearchEngineOperationType.UPSERT_SEARCHABLE_PRODUCT);
         assertThat(operation.getProductId()).isEqualTo(relatedProductId);
-        assertThat(productRepository.findAll().size()).isEqualTo(1);
-        assertThat(offerRepository.findAll().size()).isEqualTo(1);
+        assertThat(stateStore.findProduct(relatedProductId)).isPresent();
+        assertThat(stateStore.findOffer(offerId)).get().extracting(offer -> offer.getProduct().getId())
+                .isEqualTo(relatedProductId);
     }
 
     @Test
@@ -770,10 +864,10 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var upsertProductResponse = service.getBaseSearchEngineOperations(upsertProductRequest);
-        var upsertOfferResponse = service.getBaseSearchEngineOperations(upsertOfferRequest);
-        var deleteOfferResponse = service.getBaseSearchEngineOperations(deleteOfferRequest);
-        var deleteProductResponse = service.getBaseSearchEngineOperations(deleteProductRequest);
+        var upsertProductResponse = ingest(upsertProductRequest, SqlBudget.of(3, 1, 0, 0));
+        var upsertOfferResponse = ingest(upsertOfferRequest, SqlBudget.of(5, 1, 0, 0));
+        var deleteOfferResponse = ingest(deleteOfferRequest, SqlBudget.of(2, 0, 0, 1));
+        var deleteProductResponse = ingest(deleteProductRequest, SqlBudget.of(1, 0, 1, 1));
 
         //then
         assertThat(upsertProductResponse.size()).isEqualTo(0);
@@ -789,8 +883,8 @@ public class UpdaterServiceImplTest {
         var operation = deleteOfferResponse.getFirst();
         assertThat(operation.getOperationType()).isEqualTo(SearchEngineOperationType.DELETE_SEARCHABLE_PRODUCT);
         assertThat(operation.getProductId()).isEqualTo(productId);
-        verify(productRepository, times(1)).delete(any());
-        assertThat(productRepository.findAll().size()).isEqualTo(0);
+        verify(stateStore, times(1)).deleteProduct(any());
+        assertThat(stateStore.findProduct(productId)).isEmpty();
     }
 
     @Test
@@ -830,9 +924,9 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var upsertProductResponse = service.getBaseSearchEngineOperations(upsertProductRequest);
-        var upsertOfferResponse = service.getBaseSearchEngineOperations(upsertOfferRequest);
-        var newOfferNameResponse = service.getBaseSearchEngineOperations(newOfferNameRequest);
+        var upsertProductResponse = ingest(upsertProductRequest, SqlBudget.of(3, 1, 0, 0));
+        var upsertOfferResponse = ingest(upsertOfferRequest, SqlBudget.of(5, 1, 0, 0));
+        var newOfferNameResponse = ingest(newOfferNameRequest, SqlBudget.of(2, 0, 1, 0));
 
         //then
         assertThat(upsertProductResponse.size()).isEqualTo(0);
@@ -898,10 +992,10 @@ public class UpdaterServiceImplTest {
         );
 
         //when
-        var upsertProductResponse = service.getBaseSearchEngineOperations(upsertProductRequest);
-        var upsertOfferResponse = service.getBaseSearchEngineOperations(upsertOfferRequest);
-        var upsertSecondOfferResponse = service.getBaseSearchEngineOperations(secondUpsertOfferRequest);
-        var newOfferNameResponse = service.getBaseSearchEngineOperations(newOfferNameRequest);
+        var upsertProductResponse = ingest(upsertProductRequest, SqlBudget.of(3, 1, 0, 0));
+        var upsertOfferResponse = ingest(upsertOfferRequest, SqlBudget.of(5, 1, 0, 0));
+        var upsertSecondOfferResponse = ingest(secondUpsertOfferRequest, SqlBudget.of(5, 1, 0, 0));
+        var newOfferNameResponse = ingest(newOfferNameRequest, SqlBudget.of(2, 0, 1, 0));
 
         //then
         assertThat(upsertProductResponse.size()).isEqualTo(0);
@@ -926,4 +1020,706 @@ public class UpdaterServiceImplTest {
         assertThat(newOfferNameOperation.getOfferNames().size()).isEqualTo(2);
         assertThat(newOfferNameOperation.getOfferNames()).contains(newOfferName, secondOfferName);
     }
+
+    @Test
+    void shouldProcessBatchInChunksAndReportInvalidRequests() {
+        // given
+        var productId = "productA";
+        var productName = "productAName";
+        var requests = Arrays.asList(
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, productId, null, productName),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", null, null, productId, null),
+                null,
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerB", "offerBName", null, productId, null),
+                new IngestionRequest(null, "offerC", "offerCName", null, productId, null)
+        );
+
+        //when
+        var results = service.getBatchSearchEngineOperations(requests);
+
+        //then
+        assertThat(results.size()).isEqualTo(5);
+        assertThat(results.stream().map(IngestionResult::index).toList()).containsExactly(0, 1, 2, 3, 4);
+        assertThat(results.get(0).operations()).isEmpty();
+        assertThat(results.get(1).error()).isEqualTo("Field: offerName must not be null for operation: UPSERT_OFFER");
+        assertThat(results.get(2).error()).isEqualTo("Request body can't be null");
+        assertThat(results.get(4).error()).isEqualTo("Field: operation must not be null");
+
+        var operation = (UpsertOperation) results.get(3).operations().getFirst();
+        assertThat(operation.getProductId()).isEqualTo(productId);
+        assertThat(operation.getProductName()).isEqualTo(productName);
+        assertThat(operation.getOfferNames()).containsExactly("offerBName");
+        assertThat(stateStore.findProduct(productId)).isPresent();
+        assertThat(stateStore.findOffer("offerA")).isEmpty();
+        assertThat(stateStore.findOffer("offerB")).isPresent();
+    }
+
+    @Test
+    void shouldReturnEmptyResultForEmptyBatch() {
+        //when
+        var results = service.getBatchSearchEngineOperations(List.of());
+
+        //then
+        assertThat(results).isEmpty();
+    }
+
+    @Test
+    void shouldCoalesceBatchOperationsToFinalStatePerProduct() {
+        // given
+        var productId = "productA";
+        var requests = List.of(
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, productId, null, "productAName"),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "offerAName", null, productId, null),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerB", "offerBName", null, productId, null),
+                new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, productId, null, null),
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productB", null, "productBName"),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerC", "offerCName", null, "productB", null),
+                new IngestionRequest(RequestOperationType.DELETE_OFFER, "offerC", null, null, null, null),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerD", "offerDName", null, "productB", null)
+        );
+
+        //when
+        var results = service.getBatchSearchEngineOperations(requests);
+
+        //then
+        assertThat(results.size()).isEqualTo(8);
+        assertThat(results.get(1).operations()).isEmpty();
+        assertThat(results.get(2).operations()).isEmpty();
+        assertThat(results.get(3).operations().getFirst().getOperationType())
+                .isEqualTo(SearchEngineOperationType.DELETE_SEARCHABLE_PRODUCT);
+        assertThat(results.get(5).operations()).isEmpty();
+        assertThat(results.get(6).operations()).isEmpty();
+        var operation = (UpsertOperation) results.get(7).operations().getFirst();
+        assertThat(operation.getProductId()).isEqualTo("productB");
+        assertThat(operation.getOfferNames()).containsExactly("offerDName");
+    }
+
+    @Test
+    void shouldReadOfferNamesFromIndexAfterFirstLoad() {
+        assumeTrue(stateStore instanceof JpaStateStore, "offer index is used by the JPA state store only");
+
+        // given
+        var productId = "productA";
+        var product = new Product(productId, "productAName");
+        stateStore.saveProduct(product);
+        stateStore.saveOffer(new Offer("offerA", "offerAName", product));
+        var firstRequest = new IngestionRequest(
+                RequestOperationType.UPSERT_OFFER, "offerB", "offerBName", null, productId, null);
+        var secondRequest = new IngestionRequest(
+                RequestOperationType.UPSERT_OFFER, "offerC", "offerCName", null, productId, null);
+
+        //when
+        service.getBaseSearchEngineOperations(firstRequest);
+        var responseOperations = ingest(secondRequest, SqlBudget.of(5, 1, 0, 0));
+
+        //then
+        var operation = (UpsertOperation) responseOperations.getFirst();
+        assertThat(operation.getOfferNames()).containsExactly("offerAName", "offerBName", "offerCName");
+        verify(offerRepository, times(1)).findEntriesByProductId(productId);
+    }
+
+    @Test
+    void shouldDetachAllOffersOfDeletedProductInOneUpdate() {
+        // given
+        var productId = "productA";
+        var product = new Product(productId, "productAName");
+        stateStore.saveProduct(product);
+        stateStore.saveOffer(new Offer("offerA", "offerAName", product));
+        stateStore.saveOffer(new Offer("offerB", "offerBName", product));
+        var request = new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, productId, null, null);
+
+        //when
+        var responseOperations = ingest(request, SqlBudget.of(1, 0, 1, 1));
+
+        //then
+        assertThat(responseOperations.size()).isEqualTo(1);
+        assertThat(responseOperations.getFirst().getOperationType())
+                .isEqualTo(SearchEngineOperationType.DELETE_SEARCHABLE_PRODUCT);
+        verify(stateStore, times(1)).detachOffers(productId);
+        assertThat(stateStore.findProduct(productId)).isEmpty();
+        assertThat(List.of("offerA", "offerB")).allSatisfy(offerId ->
+                assertThat(stateStore.findOffer(offerId)).get().extracting(Offer::getProduct).isNull());
+    }
+
+    @Test
+    void shouldEvictOnlyOffersOfDetachedProduct() {
+        assumeTrue(stateStore instanceof JpaStateStore, "persistence context is used by the JPA state store only");
+
+        // given
+        var productA = new Product("productA", "productAName");
+        var productB = new Product("productB", "productBName");
+        stateStore.saveProduct(productA);
+        stateStore.saveProduct(productB);
+        stateStore.saveOffer(new Offer("offerA", "offerAName", productA));
+        stateStore.saveOffer(new Offer("offerB", "offerBName", productB));
+        entityManager.flush();
+        entityManager.clear();
+        stateStore.findOffer("offerA");
+        stateStore.findOffer("offerB");
+
+        //when
+        // measured with both offers in the persistence context on purpose, only the detached one is read again
+        var offers = sqlStatementRecorder.assertWithin(SqlBudget.of(1, 0, 1, 0), () -> {
+            stateStore.detachOffers("productA");
+            return List.of(stateStore.findOffer("offerA").orElseThrow(), stateStore.findOffer("offerB").orElseThrow());
+        });
+
+        //then
+        assertThat(offers.get(0).getProduct()).isNull();
+        assertThat(offers.get(1).getProduct().getId()).isEqualTo("productB");
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldLeaveStateUnchangedByRolledBackChunk() {
+        // given
+        service.getBatchSearchEngineOperations(List.of(
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "productAName"),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "offerAName", null, "productA", null)));
+
+        //when
+        var results = new TransactionTemplate(transactionManager).execute(status -> {
+            var chunkResults = service.getBatchSearchEngineOperations(List.of(
+                    new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "newName"),
+                    new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerB", "offerBName", null, "productB", null),
+                    new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "offerAName", null, "productB", null),
+                    new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, "productA", null, null)));
+            status.setRollbackOnly();
+            return chunkResults;
+        });
+
+        //then
+        assertThat(results).allMatch(result -> result.error() == null);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            assertThat(stateStore.findProduct("productA")).get().extracting(Product::getName).isEqualTo("productAName");
+            assertThat(stateStore.getOfferNames("productA")).containsExactly("offerAName");
+            assertThat(stateStore.findOffer("offerA")).get().extracting(offer -> offer.getProduct().getId())
+                    .isEqualTo("productA");
+            assertThat(stateStore.findOffer("offerB")).isEmpty();
+            assertThat(stateStore.findProduct("productB")).isEmpty();
+            assertThat(stateStore.getOfferNames("productB")).isEmpty();
+        });
+    }
+
+    @Test
+    void shouldLockRelatedAndPreviousProductOfMovedOffer() {
+        // given
+        var previousProduct = new Product("productA", "productAName");
+        stateStore.saveProduct(previousProduct);
+        stateStore.saveProduct(new Product("productB", "productBName"));
+        stateStore.saveOffer(new Offer("offerA", "offerAName", previousProduct));
+        var request = new IngestionRequest(
+                RequestOperationType.UPSERT_OFFER, "offerA", "offerAName", null, "productB", null);
+
+        //when
+        service.getBaseSearchEngineOperations(request);
+
+        //then
+        verify(productLocks, times(1)).lock(Set.of("productA", "productB"));
+        verify(productLocks, never()).recordRetry();
+        verify(stateStore, times(1)).findOfferProductIds(Set.of("offerA"));
+    }
+
+    @Test
+    void shouldLockAgainWhenOfferMovedBeforeLocking() {
+        // given
+        var previousProduct = new Product("productA", "productAName");
+        stateStore.saveProduct(previousProduct);
+        stateStore.saveProduct(new Product("productB", "productBName"));
+        stateStore.saveOffer(new Offer("offerA", "offerAName", previousProduct));
+        // owner seen before locking, the offer is moved to productA by another request meanwhile
+        doReturn(Map.of("offerA", "productC")).when(stateStore).findOfferProductIds(Set.of("offerA"));
+        var request = new IngestionRequest(
+                RequestOperationType.UPSERT_OFFER, "offerA", "offerAName", null, "productB", null);
+
+        //when
+        var responseOperations = service.getBaseSearchEngineOperations(request);
+
+        //then
+        verify(productLocks, times(1)).lock(Set.of("productB", "productC"));
+        verify(productLocks, times(1)).lock(Set.of("productA", "productB"));
+        verify(productLocks, times(1)).recordRetry();
+        verify(stateStore, times(1)).findOfferProductIds(Set.of("offerA"));
+        assertThat(responseOperations).extracting(BaseSearchEngineOperation::getProductId)
+                .containsExactlyInAnyOrder("productA", "productB");
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldProcessBatchInLanesKeepingOrderPerProduct() throws InterruptedException {
+        // given
+        var meterRegistry = new SimpleMeterRegistry();
+        var lanes = new ExecutionLanes(new LaneProperties(true, 4, 10), meterRegistry);
+        var laneService = updaterService(stateStore, transactionManager)
+                .batchProperties(new BatchProperties(10, false)).productLocks(productLocks)
+                .metrics(metrics).lanes(lanes).build();
+        var requests = List.of(
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "productAName"),
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productB", null, "productBName"),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "offerAName", null, "productA", null),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerB", "offerBName", null, "productB", null),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerC", "offerCName", null, "productA", null),
+                new IngestionRequest(RequestOperationType.DELETE_OFFER, "offerA", null, null, null, null),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, null, "offerName", null, "productB", null)
+        );
+
+        //when
+        var results = laneService.getBatchSearchEngineOperations(requests);
+        lanes.shutdown();
+
+        //then
+        assertThat(results).extracting(IngestionResult::index).containsExactly(0, 1, 2, 3, 4, 5, 6);
+        assertThat(((UpsertOperation) results.get(4).operations().getFirst()).getOfferNames())
+                .containsExactly("offerAName", "offerCName");
+        assertThat(((UpsertOperation) results.get(5).operations().getFirst()).getOfferNames())
+                .containsExactly("offerCName");
+        assertThat(results.get(6).error()).isNotNull();
+        assertThat(stateStore.getOfferNames("productB")).containsExactly("offerBName");
+        assertThat(meterRegistry.find("searchupdater.lanes.processed").counters().stream()
+                .mapToDouble(Counter::count).sum()).isEqualTo(requests.size());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldAppendCommittedOperationsToOperationLog() {
+        // given
+        var operationLog = createOperationLog();
+        var logService = updaterService(stateStore, transactionManager)
+                .batchProperties(new BatchProperties(10, false)).productLocks(productLocks)
+                .metrics(metrics).operationLog(operationLog).build();
+        var requests = List.of(
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "productAName"),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "offerAName", null, "productA", null),
+                new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, "productA", null, null)
+        );
+
+        //when
+        logService.getBatchSearchEngineOperations(requests);
+        var firstPage = operationLog.read(0, 1);
+        var secondPage = operationLog.read(firstPage.next(), 10);
+
+        //then
+        assertThat(firstPage.operations()).extracting(LoggedOperation::sequence).containsExactly(1L);
+        assertThat(firstPage.operations().getFirst().operation())
+                .contains("\"operationType\":\"UPSERT_SEARCHABLE_PRODUCT\"", "\"offerNames\":[\"offerAName\"]");
+        assertThat(secondPage.operations()).extracting(LoggedOperation::sequence).containsExactly(2L);
+        assertThat(secondPage.operations().getFirst().operation()).contains("DELETE_SEARCHABLE_PRODUCT");
+        assertThat(secondPage.lastSequence()).isEqualTo(2);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldNotExposeOperationsOfTransactionsInProgressOrRolledBack() {
+        // given
+        var operationLog = createOperationLog();
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        var operation = List.<BaseSearchEngineOperation>of(new DeleteOperation("productA"));
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> {
+            operationLog.append(operation);
+            assertThat(operationLog.read(0, 10).operations()).isEmpty();
+            status.setRollbackOnly();
+        });
+        transactionTemplate.executeWithoutResult(status -> operationLog.append(operation));
+
+        //then
+        var page = operationLog.read(0, 10);
+        assertThat(page.operations()).extracting(LoggedOperation::sequence).containsExactly(2L);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldDeliverOneOperationForProductChangedWithinDebounceWindow() throws InterruptedException {
+        // given
+        var meterRegistry = new SimpleMeterRegistry();
+        var sink = new InMemorySearchEngineSink();
+        var publisher = createPublisher(sink, meterRegistry);
+        var debouncer = new ProductDebouncer(stateStore, productLocks, transactionManager, publisher,
+                new DebounceProperties(true, Duration.ofMillis(100), Duration.ofSeconds(5), 100), meterRegistry);
+        debouncer.start();
+        var debouncedService = updaterService(stateStore, transactionManager)
+                .batchProperties(new BatchProperties(10, false)).productLocks(productLocks)
+                .metrics(metrics).operationPublisher(publisher).debouncer(debouncer).build();
+        debouncedService.getBaseSearchEngineOperations(
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "productAName"));
+
+        //when
+        for (var offer : List.of("offerA", "offerB", "offerC")) {
+            debouncedService.getBaseSearchEngineOperations(
+                    new IngestionRequest(RequestOperationType.UPSERT_OFFER, offer, offer + "Name", null, "productA", null));
+        }
+
+        //then
+        await().atMost(Duration.ofSeconds(5)).until(() -> !sink.getRequests().isEmpty());
+        debouncer.stop();
+        publisher.stop();
+        var delivered = sink.getRequests().stream().flatMap(request -> request.operations().stream()).toList();
+        assertThat(delivered).singleElement().isInstanceOfSatisfying(UpsertOperation.class, operation ->
+                assertThat(operation.getOfferNames()).containsExactly("offerAName", "offerBName", "offerCName"));
+        assertThat(meterRegistry.get("searchupdater.debounce.suppressed").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("searchupdater.debounce.emitted").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldDeliverProductChangingContinuouslyAfterMaxDelay() throws InterruptedException {
+        // given
+        var meterRegistry = new SimpleMeterRegistry();
+        var sink = new InMemorySearchEngineSink();
+        var publisher = createPublisher(sink, meterRegistry);
+        var debouncer = new ProductDebouncer(stateStore, productLocks, transactionManager, publisher,
+                new DebounceProperties(true, Duration.ofSeconds(10), Duration.ofMillis(100), 100), meterRegistry);
+        debouncer.start();
+
+        //when
+        var start = System.nanoTime();
+        while (sink.getRequests().isEmpty() && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+            debouncer.hold(List.of(new UpsertOperation("productA", "productAName", List.of("offerAName"))));
+            Thread.sleep(10);
+        }
+
+        //then
+        debouncer.stop();
+        publisher.stop();
+        assertThat(sink.getRequests().getFirst().operations()).singleElement()
+                .isInstanceOf(DeleteOperation.class);
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(5);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldDeliverSettledProductsInGroupsReadTogether() throws InterruptedException {
+        // given
+        var meterRegistry = new SimpleMeterRegistry();
+        var sink = new InMemorySearchEngineSink();
+        var publisher = createPublisher(sink, meterRegistry);
+        var debouncer = new ProductDebouncer(stateStore, productLocks, transactionManager, publisher,
+                new DebounceProperties(true, Duration.ofSeconds(10), Duration.ofSeconds(10), 2), meterRegistry);
+        debouncer.start();
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        var productIds = List.of("productA", "productB", "productC", "productD", "productE");
+        for (var productId : productIds) {
+            var product = new Product(productId, productId + "Name");
+            transactionTemplate.executeWithoutResult(status -> {
+                stateStore.saveProduct(product);
+                stateStore.saveOffer(new Offer(productId + "Offer", productId + "OfferName", product));
+            });
+            debouncer.hold(List.of(new DeleteOperation(productId)));
+        }
+
+        //when
+        // still held products are delivered when stopping, one query per group of two
+        sqlStatementRecorder.assertWithin(SqlBudget.of(3, 0, 0, 0), () -> {
+            try {
+                debouncer.stop();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+
+        //then
+        publisher.stop();
+        var delivered = sink.getRequests().stream().flatMap(request -> request.operations().stream()).toList();
+        assertThat(delivered).extracting(BaseSearchEngineOperation::getProductId)
+                .containsExactlyInAnyOrderElementsOf(productIds);
+        assertThat(delivered).allSatisfy(operation -> assertThat(operation).isInstanceOf(UpsertOperation.class));
+        verify(productLocks, times(3)).lock(anyCollection());
+    }
+
+    @Test
+    void shouldEmitPartialUpdatesForSmallChangesOfLargeProducts() {
+        // given
+        var deltaService = updaterService(stateStore, transactionManager)
+                .batchProperties(new BatchProperties(10, false)).productLocks(productLocks)
+                .deltaProperties(new DeltaProperties(true, 3, 0.5)).metrics(metrics).build();
+        var product = new Product("productA", "productAName");
+        stateStore.saveProduct(product);
+        for (var offer : List.of("offerA", "offerB", "offerC")) {
+            stateStore.saveOffer(new Offer(offer, offer + "Name", product));
+        }
+        var requests = List.of(
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerD", "offerDName", null, "productA", null),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "newOfferAName", null, "productA", null),
+                new IngestionRequest(RequestOperationType.DELETE_OFFER, "offerB", null, null, null, null),
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "newProductAName"),
+                new IngestionRequest(
+                        RequestOperationType.UPSERT_OFFER, "offerE", "offerEName", null, "productA", null, true)
+        );
+
+        //when
+        var results = deltaService.getBatchSearchEngineOperations(requests);
+
+        //then
+        assertThat(results.get(0).operations().getFirst()).isInstanceOfSatisfying(PartialUpdateOperation.class,
+                operation -> {
+                    assertThat(operation.getAddedOfferNames()).containsExactly("offerDName");
+                    assertThat(operation.getRemovedOfferNames()).isEmpty();
+                });
+        assertThat(results.get(1).operations().getFirst()).isInstanceOfSatisfying(PartialUpdateOperation.class,
+                operation -> {
+                    assertThat(operation.getAddedOfferNames()).containsExactly("newOfferAName");
+                    assertThat(operation.getRemovedOfferNames()).containsExactly("offerAName");
+                });
+        assertThat(results.get(2).operations().getFirst()).isInstanceOfSatisfying(PartialUpdateOperation.class,
+                operation -> assertThat(operation.getRemovedOfferNames()).containsExactly("offerBName"));
+        assertThat(results.get(3).operations().getFirst()).isInstanceOfSatisfying(PartialUpdateOperation.class,
+                operation -> {
+                    assertThat(operation.getProductName()).isEqualTo("newProductAName");
+                    assertThat(operation.getAddedOfferNames()).isEmpty();
+                });
+        assertThat(results.get(4).operations().getFirst()).isInstanceOfSatisfying(UpsertOperation.class,
+                operation -> assertThat(operation.getOfferNames())
+                        .containsExactlyInAnyOrder("newOfferAName", "offerCName", "offerDName", "offerEName"));
+    }
+
+    @Test
+    void shouldEmitFullDocumentWhenChangeIsLargeComparedToProduct() {
+        // given
+        var deltaService = updaterService(stateStore, transactionManager)
+                .batchProperties(new BatchProperties(10, false)).productLocks(productLocks)
+                .deltaProperties(new DeltaProperties(true, 2, 0.1)).metrics(metrics).build();
+        var product = new Product("productA", "productAName");
+        stateStore.saveProduct(product);
+        stateStore.saveOffer(new Offer("offerA", "offerAName", product));
+        stateStore.saveOffer(new Offer("offerB", "offerBName", product));
+        var request = new IngestionRequest(
+                RequestOperationType.UPSERT_OFFER, "offerC", "offerCName", null, "productA", null);
+
+        //when
+        var responseOperations = deltaService.getBaseSearchEngineOperations(request);
+
+        //then
+        assertThat(responseOperations).singleElement().isInstanceOfSatisfying(UpsertOperation.class,
+                operation -> assertThat(operation.getOfferNames())
+                        .containsExactly("offerAName", "offerBName", "offerCName"));
+    }
+
+    @Test
+    void shouldTrackHotProductsThroughPartialUpdates() {
+        // given
+        var hotProducts = new HotProducts(new HotProductProperties(true, 100, 10));
+        var deltaService = updaterService(stateStore, transactionManager)
+                .batchProperties(new BatchProperties(10, false)).productLocks(productLocks)
+                .deltaProperties(new DeltaProperties(true, 3, 0.5)).metrics(metrics).hotProducts(hotProducts).build();
+        var product = new Product("productA", "productAName");
+        stateStore.saveProduct(product);
+        for (var offer : List.of("offerA", "offerB", "offerC")) {
+            stateStore.saveOffer(new Offer(offer, offer + "Name", product));
+        }
+
+        //when
+        var fullDocument = deltaService.getBaseSearchEngineOperations(new IngestionRequest(
+                RequestOperationType.UPSERT_OFFER, "offerD", "offerDName", null, "productA", null, true));
+        var added = deltaService.getBaseSearchEngineOperations(new IngestionRequest(
+                RequestOperationType.UPSERT_OFFER, "offerE", "offerEName", null, "productA", null));
+        var removed = deltaService.getBaseSearchEngineOperations(new IngestionRequest(
+                RequestOperationType.DELETE_OFFER, "offerA", null, null, null, null));
+        deltaService.getBaseSearchEngineOperations(new IngestionRequest(
+                RequestOperationType.DELETE_OFFER, "offerB", null, null, null, null));
+
+        //then
+        assertThat(fullDocument).singleElement().isInstanceOf(UpsertOperation.class);
+        assertThat(added).singleElement().isInstanceOf(PartialUpdateOperation.class);
+        assertThat(removed).singleElement().isInstanceOf(PartialUpdateOperation.class);
+        var report = hotProducts.report();
+        assertThat(report.operations()).containsExactly(new HeavyHitter("productA", 4, 0));
+        assertThat(report.offers()).containsExactly(new LargestProduct("productA", 3));
+    }
+
+    @Test
+    void shouldFoldPartialUpdatesOfBatchIntoOneOperation() {
+        // given
+        var deltaService = updaterService(stateStore, transactionManager)
+                .batchProperties(new BatchProperties(10, true)).productLocks(productLocks)
+                .deltaProperties(new DeltaProperties(true, 1, 1)).metrics(metrics).build();
+        var product = new Product("productA", "productAName");
+        stateStore.saveProduct(product);
+        stateStore.saveOffer(new Offer("offerA", "offerAName", product));
+        stateStore.saveOffer(new Offer("offerB", "offerBName", product));
+        var requests = List.of(
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerC", "offerCName", null, "productA", null),
+                new IngestionRequest(RequestOperationType.DELETE_OFFER, "offerA", null, null, null, null),
+                new IngestionRequest(RequestOperationType.DELETE_OFFER, "offerC", null, null, null, null),
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productB", null, "productBName"),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerD", "offerDName", null, "productB", null),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerE", "offerEName", null, "productB", null)
+        );
+
+        //when
+        var results = deltaService.getBatchSearchEngineOperations(requests);
+
+        //then
+        assertThat(results.get(0).operations()).isEmpty();
+        assertThat(results.get(1).operations()).isEmpty();
+        assertThat(results.get(2).operations()).singleElement().isInstanceOfSatisfying(
+                PartialUpdateOperation.class, operation -> {
+                    assertThat(operation.getAddedOfferNames()).isEmpty();
+                    assertThat(operation.getRemovedOfferNames()).containsExactly("offerAName");
+                });
+        assertThat(results.get(4).operations()).isEmpty();
+        assertThat(results.get(5).operations()).singleElement().isInstanceOfSatisfying(UpsertOperation.class,
+                operation -> assertThat(operation.getOfferNames()).containsExactly("offerDName", "offerEName"));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldSuppressUpsertOfDocumentEqualToLastEmitted() {
+        // given
+        var meterRegistry = new SimpleMeterRegistry();
+        var fingerprints = new DocumentFingerprints(stateStore, new FingerprintProperties(true, 100), meterRegistry);
+        var fingerprintService = updaterService(stateStore, transactionManager)
+                .batchProperties(new BatchProperties(10, true)).productLocks(productLocks)
+                .metrics(metrics).fingerprints(fingerprints).build();
+        fingerprintService.getBatchSearchEngineOperations(List.of(
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "productAName"),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "x", null, "productA", null),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerB", "y", null, "productA", null)));
+
+        //when
+        var unchanged = fingerprintService.getBatchSearchEngineOperations(List.of(
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "y", null, "productA", null),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerB", "x", null, "productA", null),
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "newName"),
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "productAName")));
+        var changed = fingerprintService.getBaseSearchEngineOperations(
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerC", "z", null, "productA", null));
+
+        //then
+        assertThat(unchanged).allMatch(result -> result.operations().isEmpty());
+        assertThat(changed).singleElement().isInstanceOfSatisfying(UpsertOperation.class,
+                operation -> assertThat(operation.getOfferNames()).containsExactlyInAnyOrder("x", "y", "z"));
+        assertThat(meterRegistry.get("searchupdater.fingerprints.suppressed").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRebuildFingerprintsFromStateStore() {
+        // given
+        var product = new Product("productA", "productAName");
+        stateStore.saveProduct(product);
+        stateStore.saveOffer(new Offer("offerA", "offerAName", product));
+        stateStore.saveOffer(new Offer("offerB", "offerBName", product));
+        var fingerprints = new DocumentFingerprints(stateStore, new FingerprintProperties(true, 100),
+                new SimpleMeterRegistry());
+
+        //when
+        fingerprints.rebuild();
+
+        //then
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            assertThat(fingerprints.filter(List.of(
+                    new UpsertOperation("productA", "productAName", List.of("offerBName", "offerAName"))))).isEmpty();
+            assertThat(fingerprints.filter(List.of(
+                    new UpsertOperation("productA", "productAName", List.of("offerAName"))))).hasSize(1);
+        });
+    }
+
+    @Test
+    void shouldKeepOperationsCorrectWithWriteBehind() {
+        // given
+        var writeBehindStore = createStateStore(new WriteBehindProperties(true, 100));
+        var writeBehindService = updaterService(writeBehindStore, transactionManager)
+                .batchProperties(new BatchProperties(10, false)).productLocks(productLocks).build();
+        var requests = List.of(
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "productAName"),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "offerAName", null, "productA", null),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerB", "offerBName", null, "productA", null),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "newOfferAName", null, "productA", null),
+                new IngestionRequest(RequestOperationType.DELETE_OFFER, "offerB", null, null, null, null),
+                new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, "productA", null, null)
+        );
+
+        //when
+        var results = writeBehindService.getBatchSearchEngineOperations(requests);
+
+        //then
+        assertThat(((UpsertOperation) results.get(2).operations().getFirst()).getOfferNames())
+                .containsExactly("offerAName", "offerBName");
+        assertThat(((UpsertOperation) results.get(3).operations().getFirst()).getOfferNames())
+                .containsExactly("newOfferAName", "offerBName");
+        assertThat(((UpsertOperation) results.get(4).operations().getFirst()).getOfferNames())
+                .containsExactly("newOfferAName");
+        assertThat(results.get(5).operations().getFirst().getOperationType())
+                .isEqualTo(SearchEngineOperationType.DELETE_SEARCHABLE_PRODUCT);
+        assertThat(writeBehindStore.findProduct("productA")).isEmpty();
+        assertThat(writeBehindStore.findOffer("offerB")).isEmpty();
+        assertThat(writeBehindStore.findOffer("offerA")).get().satisfies(offer -> {
+            assertThat(offer.getName()).isEqualTo("newOfferAName");
+            assertThat(offer.getProduct()).isNull();
+        });
+    }
+
+    @Test
+    void shouldInsertNewProductWithoutSelectWithWriteBehind() {
+        // given
+        var writeBehindStore = createStateStore(new WriteBehindProperties(true, 100));
+        var writeBehindService = updaterService(writeBehindStore, transactionManager)
+                .batchProperties(new BatchProperties(10, false)).productLocks(productLocks).build();
+        var request = new IngestionRequest(
+                RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "productAName");
+
+        //when
+        // one select less than shouldNotUpsertSearchableProductForNewProductWithoutOffers, which merges the product
+        sqlStatementRecorder.assertWithin(SqlBudget.of(2, 1, 0, 0), entityManager, () -> {
+            var operations = writeBehindService.getBaseSearchEngineOperations(request);
+            entityManager.flush();
+            return operations;
+        });
+
+        //then
+        assertThat(writeBehindStore.findProduct("productA")).get()
+                .extracting(Product::getName).isEqualTo("productAName");
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldMeterRequestsOperationsAndTransactions() {
+        // given
+        var meteredService = updaterService(stateStore, transactionManager)
+                .batchProperties(new BatchProperties(10, false)).productLocks(productLocks)
+                .metrics(metrics).build();
+
+        //when
+        meteredService.getBatchSearchEngineOperations(Arrays.asList(
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "productAName"),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "offerAName", null, "productA", null),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerB", "offerBName", null, "productA", null),
+                null));
+        meteredService.getBaseSearchEngineOperations(
+                new IngestionRequest(RequestOperationType.DELETE_OFFER, "offerA", null, null, null, null));
+
+        //then
+        assertThat(meterRegistry.get("searchupdater.requests")
+                .tags("operation", "UPSERT_OFFER", "provider", "UpsertOfferOperationProvider", "outcome", "success")
+                .timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("searchupdater.requests")
+                .tags("operation", "none", "provider", "none", "outcome", "rejected").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("searchupdater.operations.emitted")
+                .tag("type", SearchEngineOperationType.UPSERT_SEARCHABLE_PRODUCT.name()).counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("searchupdater.operations.emitted")
+                .tag("type", SearchEngineOperationType.PARTIAL_UPDATE_SEARCHABLE_PRODUCT.name()).counter().count()).isZero();
+        assertThat(meterRegistry.get("searchupdater.documents.offers").summary().max()).isEqualTo(2);
+        assertThat(meterRegistry.get("searchupdater.transactions.commit").timer().count()).isEqualTo(2);
+        var statements = meterRegistry.get("searchupdater.transactions.statements").summary();
+        assertThat(statements.count()).isEqualTo(2);
+        if (stateStore instanceof JpaStateStore) {
+            assertThat(statements.totalAmount()).isPositive();
+        }
+    }
+
+    private BulkOperationPublisher createPublisher(SearchEngineSink sink, SimpleMeterRegistry meterRegistry) {
+        var publisher = new BulkOperationPublisher(sink, new SinkProperties("in-memory", "products", 100,
+                DataSize.ofMegabytes(1), Duration.ofMillis(10), 100, 0, Duration.ofMillis(1), Duration.ofMillis(10),
+                Path.of("unused"), Path.of("unused"), Duration.ofSeconds(5)), new ObjectMapper(), meterRegistry);
+        publisher.start();
+        return publisher;
+    }
+
+    private OperationLog createOperationLog() {
+        var operationLog = new OperationLog(operationLogRepository, new ObjectMapper(),
+                new OperationLogProperties(true, Duration.ofDays(1), Duration.ofMinutes(1), 100));
+        operationLog.init();
+        return operationLog;
+    }
 }
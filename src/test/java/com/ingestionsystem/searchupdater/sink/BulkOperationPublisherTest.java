@@ -0,0 +1,195 @@
+package com.ingestionsystem.searchupdater.sink;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ingestionsystem.searchupdater.config.SinkProperties;
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+import com.ingestionsystem.searchupdater.operation.DeleteOperation;
+import com.ingestionsystem.searchupdater.operation.PartialUpdateOperation;
+import com.ingestionsystem.searchupdater.operation.UpsertOperation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+public class BulkOperationPublisherTest {
+
+    @TempDir
+    private Path tempDir;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InMemorySearchEngineSink inMemorySink = new InMemorySearchEngineSink();
+    private BulkOperationPublisher publisher;
+
+    @AfterEach
+    public void clean() throws InterruptedException {
+        publisher.stop();
+    }
+
+    @Test
+    void shouldSendOperationsInBulkRequestsBoundedBySize() {
+        // given
+        publisher = createPublisher(inMemorySink, 2, 10, 0);
+
+        //when
+        publisher.publish(List.of(upsert("productA"), upsert("productB"), new DeleteOperation("productC")));
+
+        //then
+        await().atMost(Duration.ofSeconds(5)).until(() -> inMemorySink.getRequests().size() == 2);
+        var requests = inMemorySink.getRequests();
+        assertThat(requests.get(0).operations()).hasSize(2);
+        assertThat(new String(requests.get(0).body(), StandardCharsets.UTF_8)).isEqualTo("""
+                {"index":{"_index":"products","_id":"productA"}}
+                {"productId":"productA","productName":"productAName","offerNames":["offerName"]}
+                {"index":{"_index":"products","_id":"productB"}}
+                {"productId":"productB","productName":"productBName","offerNames":["offerName"]}
+                """);
+        assertThat(new String(requests.get(1).body(), StandardCharsets.UTF_8))
+                .isEqualTo("{\"delete\":{\"_index\":\"products\",\"_id\":\"productC\"}}\n");
+    }
+
+    @Test
+    void shouldSendPartialUpdateAsScriptedUpdate() {
+        // given
+        publisher = createPublisher(inMemorySink, 10, 10, 0);
+
+        //when
+        publisher.publish(List.of(
+                new PartialUpdateOperation("productA", null, List.of("offerBName"), List.of("offerAName"))));
+
+        //then
+        await().atMost(Duration.ofSeconds(5)).until(() -> inMemorySink.getRequests().size() == 1);
+        var lines = new String(inMemorySink.getRequests().getFirst().body(), StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).isEqualTo("{\"update\":{\"_index\":\"products\",\"_id\":\"productA\"}}");
+        assertThat(lines[1]).contains("\"lang\":\"painless\"",
+                "\"params\":{\"productName\":null,\"added\":[\"offerBName\"],\"removed\":[\"offerAName\"]}");
+    }
+
+    @Test
+    void shouldRetryFailedBulkRequest() {
+        // given
+        var failures = new AtomicInteger(2);
+        publisher = createPublisher(request -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IOException("Search engine unavailable");
+            }
+            inMemorySink.send(request);
+        }, 10, 10, 0);
+
+        //when
+        publisher.publish(List.of(upsert("productA")));
+
+        //then
+        await().atMost(Duration.ofSeconds(5)).until(() -> inMemorySink.getRequests().size() == 1);
+        assertThat(meterRegistry.get("searchupdater.sink.retries").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("searchupdater.sink.operations").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldDeadLetterBulkRequestAfterMaxAttempts() throws IOException {
+        // given
+        publisher = createPublisher(request -> {
+            throw new IOException("Search engine unavailable");
+        }, 10, 10, 3);
+
+        //when
+        publisher.publish(List.of(upsert("productA"), new DeleteOperation("productB")));
+
+        //then
+        await().atMost(Duration.ofSeconds(5))
+                .until(() -> meterRegistry.get("searchupdater.sink.dropped").counter().count() == 2);
+        assertThat(meterRegistry.get("searchupdater.sink.retries").counter().count()).isEqualTo(2);
+        assertThat(Files.readString(deadLetterPath())).isEqualTo("""
+                {"index":{"_index":"products","_id":"productA"}}
+                {"productId":"productA","productName":"productAName","offerNames":["offerName"]}
+                {"delete":{"_index":"products","_id":"productB"}}
+                """);
+    }
+
+    @Test
+    void shouldDeadLetterOperationsStillPendingWhenStopped() throws Exception {
+        // given
+        var sending = new CountDownLatch(1);
+        publisher = createPublisher(request -> {
+            sending.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while sending");
+            }
+        }, 1, 10, 0);
+        publisher.publish(List.of(upsert("productA"), upsert("productB"), new DeleteOperation("productC")));
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+        //when
+        publisher.stop();
+
+        //then
+        var deadLettered = Files.readString(deadLetterPath());
+        assertThat(deadLettered).contains("\"_id\":\"productA\"", "\"_id\":\"productB\"", "\"_id\":\"productC\"");
+        assertThat(deadLettered.lines()).hasSize(5);
+        assertThat(meterRegistry.get("searchupdater.sink.dropped").counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("searchupdater.sink.operations").counter().count()).isZero();
+    }
+
+    @Test
+    void shouldBlockPublishingWhileSinkIsSlow() throws Exception {
+        // given
+        var release = new CountDownLatch(1);
+        publisher = createPublisher(request -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inMemorySink.send(request);
+        }, 1, 1, 0);
+
+        //when
+        var publishing = CompletableFuture.runAsync(() -> publisher.publish(
+                List.of(upsert("productA"), upsert("productB"), upsert("productC"), upsert("productD"))));
+
+        //then
+        assertThatThrownBy(() -> publishing.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        release.countDown();
+        publishing.get(5, TimeUnit.SECONDS);
+        await().atMost(Duration.ofSeconds(5)).until(() -> inMemorySink.getRequests().size() == 4);
+        assertThat(meterRegistry.get("searchupdater.sink.backpressure").timer().count()).isPositive();
+    }
+
+    private BulkOperationPublisher createPublisher(SearchEngineSink sink, int batchSize, int maxPending,
+                                                   int maxAttempts) {
+        var sinkProperties = new SinkProperties("in-memory", "products", batchSize, DataSize.ofMegabytes(1),
+                Duration.ofMillis(50), maxPending, maxAttempts, Duration.ofMillis(1), Duration.ofMillis(10),
+                Path.of("unused"), deadLetterPath(), Duration.ofMillis(200));
+        var publisher = new BulkOperationPublisher(sink, sinkProperties, new ObjectMapper(), meterRegistry);
+        publisher.start();
+        return publisher;
+    }
+
+    private Path deadLetterPath() {
+        return tempDir.resolve("dead-letter.ndjson");
+    }
+
+    private static BaseSearchEngineOperation upsert(String productId) {
+        return new UpsertOperation(productId, productId + "Name", List.of("offerName"));
+    }
+}
@@ -0,0 +1,218 @@
+package com.ingestionsystem.searchupdater.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ingestionsystem.searchupdater.config.OperationLogProperties;
+import com.ingestionsystem.searchupdater.config.SnapshotProperties;
+import com.ingestionsystem.searchupdater.config.WriteBehindProperties;
+import com.ingestionsystem.searchupdater.index.ProductOfferIndex;
+import com.ingestionsystem.searchupdater.model.Offer;
+import com.ingestionsystem.searchupdater.model.Product;
+import com.ingestionsystem.searchupdater.operation.BaseSearchEngineOperation;
+import com.ingestionsystem.searchupdater.operation.DeleteOperation;
+import com.ingestionsystem.searchupdater.oplog.OperationLog;
+import com.ingestionsystem.searchupdater.repository.OfferRepository;
+import com.ingestionsystem.searchupdater.repository.OperationLogRepository;
+import com.ingestionsystem.searchupdater.repository.ProductRepository;
+import com.ingestionsystem.searchupdater.store.InMemoryStateStore;
+import com.ingestionsystem.searchupdater.store.JpaStateStore;
+import com.ingestionsystem.searchupdater.store.StateStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class CatalogSnapshotServiceTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OfferRepository offerRepository;
+
+    @Autowired
+    private OperationLogRepository operationLogRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path directory;
+
+    @AfterEach
+    public void clean() {
+        offerRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+        operationLogRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void shouldRestoreWrittenSnapshot() throws Exception {
+        // given
+        var snapshotService = createSnapshotService();
+        var product = productRepository.save(new Product("productA", "productAName"));
+        offerRepository.save(new Offer("offerA", "offerAName", product));
+        offerRepository.save(new Offer("offerB", null, null));
+        snapshotService.writeSnapshot();
+        clean();
+
+        //when
+        var restored = snapshotService.restoreSnapshot();
+
+        //then
+        assertThat(restored).isTrue();
+        assertThat(productRepository.findById("productA")).get().extracting(Product::getName).isEqualTo("productAName");
+        assertThat(offerRepository.findEntriesByProductId("productA"))
+                .singleElement().satisfies(entry -> assertThat(entry.name()).isEqualTo("offerAName"));
+        assertThat(offerRepository.findById("offerB")).get().extracting(Offer::getName).isNull();
+    }
+
+    @Test
+    void shouldRestoreNameLongerThanModifiedUtfLimit() throws Exception {
+        // given
+        // the mapped column is shorter, a database created by other means may hold longer names
+        jdbcTemplate.execute("alter table product alter column name set data type varchar(100000)");
+        // 3 bytes per character in UTF-8, above the 65535 bytes writeUTF can encode
+        var name = "€".repeat(30_000);
+        var snapshotService = createSnapshotService();
+        productRepository.save(new Product("productA", name));
+        snapshotService.writeSnapshot();
+        clean();
+
+        //when
+        var restored = snapshotService.restoreSnapshot();
+
+        //then
+        assertThat(restored).isTrue();
+        assertThat(productRepository.findById("productA")).get().extracting(Product::getName).isEqualTo(name);
+    }
+
+    @Test
+    void shouldContinueOperationLogSequencesAfterRestart() throws Exception {
+        // given
+        var operationLog = createOperationLog();
+        append(operationLog, new DeleteOperation("productA"), new DeleteOperation("productB"));
+        createSnapshotService(operationLog).writeSnapshot();
+        // the in-memory database, operation log included, is gone after a restart
+        clean();
+        var restartedOperationLog = createOperationLog();
+
+        //when
+        var restored = createSnapshotService(restartedOperationLog).restoreSnapshot();
+        append(restartedOperationLog, new DeleteOperation("productC"));
+
+        //then
+        assertThat(restored).isTrue();
+        // entries written before the restart are gone, only their last sequence is kept
+        assertThat(restartedOperationLog.read(0, 10).operations())
+                .singleElement().satisfies(operation -> assertThat(operation.sequence()).isEqualTo(3));
+    }
+
+    @Test
+    void shouldRebuildOfferIndexAfterRestoreOnStartup() throws Exception {
+        // given
+        var product = productRepository.save(new Product("productA", "productAName"));
+        offerRepository.save(new Offer("offerA", "offerAName", product));
+        createSnapshotService().writeSnapshot();
+        clean();
+        var meterRegistry = new SimpleMeterRegistry();
+        var offerIndex = new ProductOfferIndex(productRepository, offerRepository, meterRegistry);
+        var snapshotService = createSnapshotService(createJpaStateStore(), Optional.empty(), Optional.of(offerIndex));
+
+        //when
+        new TransactionTemplate(transactionManager).executeWithoutResult(
+                status -> snapshotService.afterSingletonsInstantiated());
+
+        //then
+        assertThat(meterRegistry.get("searchupdater.index.offers").gauge().value()).isEqualTo(1);
+        assertThat(offerIndex.getOfferNames("productA")).containsExactly("offerAName");
+    }
+
+    @Test
+    void shouldKeepSnapshotWhichFailedToRestore() throws Exception {
+        // given
+        var path = directory.resolve("catalog.snapshot");
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        var snapshotService = createSnapshotService();
+
+        //when
+        assertThatThrownBy(snapshotService::afterSingletonsInstantiated).isInstanceOf(UncheckedIOException.class);
+        snapshotService.writeOnShutdown();
+
+        //then
+        assertThat(Files.readAllBytes(path)).containsExactly(1, 2, 3, 4, 5, 6, 7, 8);
+    }
+
+    @Test
+    void shouldRefuseStateStoreOutsideDatabase() {
+        //when, then
+        assertThatThrownBy(() -> createSnapshotService(new InMemoryStateStore()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("searchupdater.state-store=jpa");
+    }
+
+    private CatalogSnapshotService createSnapshotService() {
+        return createSnapshotService(createJpaStateStore(), Optional.empty());
+    }
+
+    private CatalogSnapshotService createSnapshotService(OperationLog operationLog) {
+        return createSnapshotService(createJpaStateStore(), Optional.of(operationLog));
+    }
+
+    private CatalogSnapshotService createSnapshotService(StateStore stateStore) {
+        return createSnapshotService(stateStore, Optional.empty());
+    }
+
+    private CatalogSnapshotService createSnapshotService(StateStore stateStore, Optional<OperationLog> operationLog) {
+        return createSnapshotService(stateStore, operationLog, Optional.empty());
+    }
+
+    private CatalogSnapshotService createSnapshotService(StateStore stateStore, Optional<OperationLog> operationLog,
+                                                         Optional<ProductOfferIndex> offerIndex) {
+        return new CatalogSnapshotService(stateStore, jdbcTemplate, transactionManager,
+                new SnapshotProperties(true, directory.resolve("catalog.snapshot"), Duration.ofMinutes(5)),
+                operationLog, offerIndex, Optional.empty());
+    }
+
+    private JpaStateStore createJpaStateStore() {
+        var offerIndex = new ProductOfferIndex(productRepository, offerRepository, new SimpleMeterRegistry());
+        return new JpaStateStore(productRepository, offerRepository, offerIndex, entityManager,
+                new WriteBehindProperties(false, 100));
+    }
+
+    private OperationLog createOperationLog() {
+        var operationLog = new OperationLog(operationLogRepository, new ObjectMapper(),
+                new OperationLogProperties(true, Duration.ofDays(1), Duration.ofMinutes(1), 100));
+        operationLog.init();
+        return operationLog;
+    }
+
+    private void append(OperationLog operationLog, BaseSearchEngineOperation... operations) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> operationLog.append(List.of(operations)));
+    }
+}
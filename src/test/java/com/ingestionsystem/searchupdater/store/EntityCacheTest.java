@@ -0,0 +1,130 @@
+package com.ingestionsystem.searchupdater.store;
+
+import com.ingestionsystem.searchupdater.config.BatchProperties;
+import com.ingestionsystem.searchupdater.config.EntityCacheConfiguration;
+import com.ingestionsystem.searchupdater.config.WriteBehindProperties;
+import com.ingestionsystem.searchupdater.index.ProductOfferIndex;
+import com.ingestionsystem.searchupdater.model.Offer;
+import com.ingestionsystem.searchupdater.model.Product;
+import com.ingestionsystem.searchupdater.operation.RequestOperationType;
+import com.ingestionsystem.searchupdater.repository.OfferRepository;
+import com.ingestionsystem.searchupdater.repository.ProductRepository;
+import com.ingestionsystem.searchupdater.service.IngestionRequest;
+import com.ingestionsystem.searchupdater.service.UpdaterServiceImpl;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static com.ingestionsystem.searchupdater.service.UpdaterServiceBuilder.updaterService;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import(EntityCacheConfiguration.class)
+@TestPropertySource(properties = "searchupdater.entity-cache.enabled=true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class EntityCacheTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OfferRepository offerRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterBinder entityCacheMetrics;
+
+    private StateStore stateStore;
+
+    private UpdaterServiceImpl service;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void init() {
+        var offerIndex = new ProductOfferIndex(productRepository, offerRepository, new SimpleMeterRegistry());
+        stateStore = new JpaStateStore(productRepository, offerRepository, offerIndex, entityManager,
+                new WriteBehindProperties(false, 100));
+        service = updaterService(stateStore, transactionManager).batchProperties(new BatchProperties(10, true)).build();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    public void clean() {
+        offerRepository.deleteAll();
+        productRepository.deleteAll();
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    void shouldServeLookupsFromCacheAndKeepItCurrent() {
+        // given
+        var meterRegistry = new SimpleMeterRegistry();
+        entityCacheMetrics.bindTo(meterRegistry);
+        service.getBatchSearchEngineOperations(List.of(
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "productAName"),
+                new IngestionRequest(RequestOperationType.UPSERT_OFFER, "offerA", "offerAName", null, "productA", null)));
+
+        //when
+        var cachedName = transactionTemplate.execute(status -> stateStore.findProduct("productA").orElseThrow().getName());
+        service.getBaseSearchEngineOperations(
+                new IngestionRequest(RequestOperationType.UPSERT_PRODUCT, null, null, "productA", null, "newName"));
+        var renamed = transactionTemplate.execute(status -> stateStore.findProduct("productA").orElseThrow().getName());
+        service.getBaseSearchEngineOperations(
+                new IngestionRequest(RequestOperationType.DELETE_OFFER, "offerA", null, null, null, null));
+        service.getBaseSearchEngineOperations(
+                new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, "productA", null, null));
+
+        //then
+        assertThat(cachedName).isEqualTo("productAName");
+        assertThat(renamed).isEqualTo("newName");
+        transactionTemplate.executeWithoutResult(status -> {
+            assertThat(stateStore.findProduct("productA")).isEmpty();
+            assertThat(stateStore.findOffer("offerA")).isEmpty();
+        });
+        var hits = meterRegistry.find("cache.gets").tag("cache", Product.class.getName()).tag("result", "hit")
+                .functionCounter();
+        assertThat(hits).extracting(FunctionCounter::count).isNotEqualTo(0.0);
+    }
+
+    @Test
+    void shouldInvalidateOffersDetachedByBulkUpdate() {
+        // given
+        var product = new Product("productA", "productAName");
+        productRepository.save(product);
+        offerRepository.save(new Offer("offerA", "offerAName", product));
+        transactionTemplate.executeWithoutResult(status -> stateStore.findOffer("offerA"));
+        assertThat(entityManagerFactory.getCache().contains(Offer.class, "offerA")).isTrue();
+
+        //when
+        service.getBaseSearchEngineOperations(
+                new IngestionRequest(RequestOperationType.DELETE_PRODUCT, null, null, "productA", null, null));
+
+        //then
+        var offer = transactionTemplate.execute(status -> stateStore.findOffer("offerA").orElseThrow());
+        assertThat(offer.getProduct()).isNull();
+    }
+}